@@ -0,0 +1,223 @@
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.ToLongFunction;
+import java.util.regex.Pattern;
+
+/**
+ * Micro-benchmarks of the search and evaluation hot paths, run on a fixed corpus of opening, midgame and endgame
+ * positions so that a regression shows up as a number.
+ * <p>
+ * Usage: {@code java Benchmarks [--warmup N] [--iterations N] [--time MS] [--filter REGEX]}
+ * <p>
+ * Every benchmark is run like a JMH benchmark in throughput mode: warmup iterations first, so that the JIT compiler
+ * has compiled the code, then measured iterations of a fixed duration. The result of every call goes into a sink, so
+ * that the JIT compiler cannot drop the work as dead code. The report gives the mean time per call over the measured
+ * iterations with its standard deviation.
+ * <p>
+ * Before timing anything, the benchmarks check that the pattern scores see every five that {@link Board#hasFive}
+ * sees, since the search finds fives only through those scores.
+ */
+public class Benchmarks {
+    private static final int BOARD_SIZE = 19;
+    private static final int TABLE_BITS = 12; // Small, so that clearing it does not dominate the shallow searches
+    private static final long CORPUS_SEED = 20240501L;
+    private static final int CHECKED_ROW_CELLS = 9; // checkFives tries every row of this many cells
+
+    // Stones per corpus position; the positions are built by a seeded random game near the center, without fives
+    private static final String[] POSITION_NAMES = {"opening", "midgame", "endgame"};
+    private static final int[] POSITION_STONES = {6, 30, 120};
+
+    private static volatile long sink;
+
+    private final int warmupIterations;
+    private final int measuredIterations;
+    private final long iterationMillis;
+
+    public Benchmarks(int warmupIterations, int measuredIterations, long iterationMillis) {
+        this.warmupIterations = warmupIterations;
+        this.measuredIterations = measuredIterations;
+        this.iterationMillis = iterationMillis;
+    }
+
+    public static void main(String[] args) {
+        int warmup = 3;
+        int iterations = 5;
+        long time = 500;
+        Pattern filter = Pattern.compile(".*");
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--warmup":
+                    warmup = Integer.parseInt(args[++i]);
+                    break;
+                case "--iterations":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "--time":
+                    time = Long.parseLong(args[++i]);
+                    break;
+                case "--filter":
+                    filter = Pattern.compile(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        new Benchmarks(warmup, iterations, time).runAll(filter);
+    }
+
+    /**
+     * Runs every benchmark whose name (for example {@code getScore/midgame}) contains a match of the filter.
+     *
+     * @param filter the benchmarks to run
+     */
+    public void runAll(Pattern filter) {
+        checkFives();
+        System.out.println(String.format("%-34s %14s %12s", "Benchmark", "ns/op", "sd"));
+        for (int p = 0; p < POSITION_NAMES.length; p++) {
+            Board board = corpusPosition(POSITION_STONES[p], CORPUS_SEED + p);
+            for (Benchmark benchmark : benchmarks(board)) {
+                String name = benchmark.name + "/" + POSITION_NAMES[p];
+                if (filter.matcher(name).find()) {
+                    double[] result = measure(benchmark.operation);
+                    System.out.println(String.format("%-34s %14.1f %12.1f", name, result[0], result[1]));
+                }
+            }
+        }
+    }
+
+    // The benchmarks of one position; none of them changes the board
+    private static List<Benchmark> benchmarks(Board board) {
+        List<Benchmark> benchmarks = new ArrayList<>();
+        benchmarks.add(new Benchmark("getAvailableMoves", b -> b.getAvailableMoves().size(), board));
+        benchmarks.add(new Benchmark("getScore", b -> Minimax.getScore(b, true, false), board));
+        benchmarks.add(new Benchmark("getScoreFullScan", b -> Minimax.getScoreFullScan(b, true, false), board));
+        benchmarks.add(new Benchmark("evaluateBoardForWhite", b -> Minimax.evaluateBoardForWhite(b, false), board));
+        benchmarks.add(new Benchmark("copyBoard", b -> new Board(b).getHash(), board));
+        for (int depth = 1; depth <= 3; depth++) {
+            // Every call starts from an empty table, so it times the whole search of the depth
+            TranspositionTable table = new TranspositionTable(TABLE_BITS,
+                    TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED);
+            SearchWorker worker = new SearchWorker(board, table, new AtomicBoolean(), 0, 1);
+            int searchDepth = depth;
+            benchmarks.add(new Benchmark("negamax/depth" + depth, b -> {
+                table.clear();
+                return worker.search(searchDepth);
+            }, board));
+        }
+        MCTS.Playout playout = new MCTS.Playout(BOARD_SIZE);
+        benchmarks.add(new Benchmark("mctsPlayout", b -> playout.run(b.getBoardMatrix(), 1), board));
+        return benchmarks;
+    }
+
+    // Runs the warmup and measured iterations; returns the mean and the standard deviation of the time per call
+    private double[] measure(Runnable operation) {
+        for (int i = 0; i < warmupIterations; i++) {
+            iteration(operation);
+        }
+        double[] times = new double[measuredIterations];
+        double sum = 0;
+        for (int i = 0; i < measuredIterations; i++) {
+            times[i] = iteration(operation);
+            sum += times[i];
+        }
+        double mean = sum / measuredIterations;
+        double squares = 0;
+        for (double time : times) {
+            squares += (time - mean) * (time - mean);
+        }
+        double sd = measuredIterations > 1 ? Math.sqrt(squares / (measuredIterations - 1)) : 0;
+        return new double[]{mean, sd};
+    }
+
+    // Calls the operation until the iteration time is used up; returns the nanoseconds per call
+    private double iteration(Runnable operation) {
+        long deadline = System.nanoTime() + iterationMillis * 1_000_000;
+        long calls = 0;
+        long start = System.nanoTime();
+        long now;
+        do {
+            operation.run();
+            calls++;
+            now = System.nanoTime();
+        } while (now < deadline);
+        return (double) (now - start) / calls;
+    }
+
+    /**
+     * Builds a corpus position: a game of random moves near the center, alternating colors and skipping any move
+     * that would make five. The positions only depend on the seed, since java.util.Random's sequence is specified.
+     *
+     * @param stones the number of stones
+     * @param seed   the seed of the game
+     * @return the position, with white to move
+     */
+    /**
+     * Checks that the incremental and full-scan pattern scores reach the win score exactly when a color has five,
+     * over every row of {@link #CHECKED_ROW_CELLS} cells of empty, black and white, gapped fives included.
+     *
+     * @throws IllegalStateException if they disagree on a row
+     */
+    static void checkFives() {
+        int rows = 1;
+        for (int i = 0; i < CHECKED_ROW_CELLS; i++) {
+            rows *= 3;
+        }
+        int winScore = Minimax.getWinningScore();
+        for (int code = 0; code < rows; code++) {
+            Board board = new Board(CHECKED_ROW_CELLS);
+            StringBuilder row = new StringBuilder();
+            for (int col = 0, cell = code; col < CHECKED_ROW_CELLS; col++, cell /= 3) {
+                if (cell % 3 != 0) {
+                    board.addPieceNoGUI(col, CHECKED_ROW_CELLS / 2, cell % 3 == 2);
+                }
+                row.append(".OX".charAt(cell % 3));
+            }
+            for (boolean black : new boolean[]{true, false}) {
+                boolean five = board.hasFive(black);
+                if ((Minimax.getScore(board, black, !black) >= winScore) != five
+                        || (Minimax.getScoreFullScan(board, black, !black) >= winScore) != five) {
+                    throw new IllegalStateException("Pattern score and hasFive disagree for "
+                            + (black ? "black" : "white") + " on row " + row);
+                }
+            }
+        }
+    }
+
+    static Board corpusPosition(int stones, long seed) {
+        Board board = new Board(BOARD_SIZE);
+        Random random = new Random(seed);
+        int center = BOARD_SIZE / 2;
+        // The stones spread out as the game goes on, like in a real game
+        int radius = Math.min(center, 2 + stones / 15);
+        boolean black = stones % 2 == 1; // White is to move after the last stone
+        int placed = 0;
+        while (placed < stones) {
+            int row = center + random.nextInt(2 * radius + 1) - radius;
+            int col = center + random.nextInt(2 * radius + 1) - radius;
+            if (board.getBoardMatrix()[row][col] != 0) {
+                continue;
+            }
+            board.addPieceNoGUI(col, row, black);
+            if (board.isFiveAt(col, row)) {
+                board.removePiece(col, row);
+                continue;
+            }
+            black = !black;
+            placed++;
+        }
+        return board;
+    }
+
+    // A named operation on a corpus position
+    private static final class Benchmark {
+        private final String name;
+        private final Runnable operation;
+
+        Benchmark(String name, ToLongFunction<Board> operation, Board board) {
+            this.name = name;
+            this.operation = () -> sink ^= operation.applyAsLong(board);
+        }
+    }
+}
@@ -0,0 +1,270 @@
+import java.util.ArrayList;
+
+/**
+ * Packed bitboard representation of a Gomoku position.
+ * <p>
+ * Every color owns one bit per cell, stored in a {@code long[]}. Cells are laid out row by row with a stride of
+ * {@code boardSize + 1}: the extra column is a guard that is always zero, so shifting a whole bitboard by one
+ * position can never wrap a stone from the end of one row onto the beginning of the next. This makes line scans
+ * (five in a row, neighbourhood dilation) word-parallel instead of cell-by-cell.
+ * <p>
+ * A 19x19 board fits in 6 words per color and a 15x15 board in 4 words per color.
+ */
+public class BitBoard {
+    // The four lines through a cell, as (x, y) steps
+    private static final int[][] DIRECTIONS = {{1, 0}, {0, 1}, {1, 1}, {1, -1}};
+
+    private final int boardSize; // Number of cells in one side
+    private final int stride; // Bits per row, including the guard column
+    private final long[] black; // One bit per cell for black stones
+    private final long[] white; // One bit per cell for white stones
+    private final long[] cellMask; // All valid (non-guard) cells of the board
+    private final int[] lineShifts; // Bit distance to the next cell along a row, both diagonals and a column
+    private int stoneCount;
+
+    // Scratch words for the word-parallel scans, so they do not allocate
+    private final long[] scratchA;
+    private final long[] scratchB;
+    private final long[] scratchC;
+
+    public BitBoard(int boardSize) {
+        this.boardSize = boardSize;
+        this.stride = boardSize + 1;
+        this.lineShifts = new int[]{1, stride - 1, stride, stride + 1};
+        int words = (boardSize * stride + 63) >>> 6;
+        black = new long[words];
+        white = new long[words];
+        cellMask = new long[words];
+        scratchA = new long[words];
+        scratchB = new long[words];
+        scratchC = new long[words];
+        for (int row = 0; row < boardSize; row++) {
+            for (int col = 0; col < boardSize; col++) {
+                int index = row * stride + col;
+                cellMask[index >>> 6] |= 1L << index;
+            }
+        }
+    }
+
+    public BitBoard(BitBoard other) {
+        this(other.boardSize);
+        System.arraycopy(other.black, 0, black, 0, black.length);
+        System.arraycopy(other.white, 0, white, 0, white.length);
+        stoneCount = other.stoneCount;
+    }
+
+    // Returns the size of the board
+    public int getBoardSize() {
+        return boardSize;
+    }
+
+    // Returns the number of stones on the board
+    public int getStoneCount() {
+        return stoneCount;
+    }
+
+    // Returns the bit index of the given cell
+    private int index(int posX, int posY) {
+        return posY * stride + posX;
+    }
+
+    // Returns 0 for an empty cell, 1 for a white stone and 2 for a black stone
+    public int get(int posX, int posY) {
+        int index = index(posX, posY);
+        long bit = 1L << index;
+        if ((black[index >>> 6] & bit) != 0) {
+            return 2;
+        }
+        return (white[index >>> 6] & bit) != 0 ? 1 : 0;
+    }
+
+    public boolean isEmpty(int posX, int posY) {
+        int index = index(posX, posY);
+        return ((black[index >>> 6] | white[index >>> 6]) & (1L << index)) == 0;
+    }
+
+    // Adds a stone of the specified color at the given position
+    public void addPiece(int posX, int posY, boolean isBlack) {
+        int index = index(posX, posY);
+        long bit = 1L << index;
+        long[] own = isBlack ? black : white;
+        long[] other = isBlack ? white : black;
+        if (((own[index >>> 6] | other[index >>> 6]) & bit) == 0) {
+            stoneCount++;
+        }
+        other[index >>> 6] &= ~bit;
+        own[index >>> 6] |= bit;
+    }
+
+    // Removes the stone at the given position
+    public void removePiece(int posX, int posY) {
+        int index = index(posX, posY);
+        long bit = 1L << index;
+        if (((black[index >>> 6] | white[index >>> 6]) & bit) != 0) {
+            stoneCount--;
+        }
+        black[index >>> 6] &= ~bit;
+        white[index >>> 6] &= ~bit;
+    }
+
+    /**
+     * Generates all empty cells that have at least one stone in one of the eight adjacent cells, in the same
+     * row-major order and {row, column} format as {@link Board#getAvailableMoves()}.
+     */
+    public ArrayList<int[]> getAvailableMoves() {
+        ArrayList<int[]> moveList = new ArrayList<>();
+        long[] occupied = scratchA;
+        long[] shifted = scratchB;
+        long[] neighbours = scratchC;
+        for (int i = 0; i < occupied.length; i++) {
+            occupied[i] = black[i] | white[i];
+            neighbours[i] = 0;
+        }
+        // Dilate the occupied cells by one step in each of the eight directions
+        for (int shift : lineShifts) {
+            shiftRight(occupied, shift, shifted);
+            for (int i = 0; i < neighbours.length; i++) {
+                neighbours[i] |= shifted[i];
+            }
+            shiftLeft(occupied, shift, shifted);
+            for (int i = 0; i < neighbours.length; i++) {
+                neighbours[i] |= shifted[i];
+            }
+        }
+        for (int w = 0; w < neighbours.length; w++) {
+            long candidates = neighbours[w] & ~occupied[w] & cellMask[w];
+            while (candidates != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(candidates);
+                moveList.add(new int[]{index / stride, index % stride});
+                candidates &= candidates - 1;
+            }
+        }
+        return moveList;
+    }
+
+    /**
+     * Writes every empty cell within the given Chebyshev distance of a stone into the buffer, as packed indices
+     * row * boardSize + column in row-major order, without allocating.
+     *
+     * @param radius the neighbourhood radius (1 gives the same cells as getAvailableMoves)
+     * @param out    receives the packed cells; must hold boardSize * boardSize entries
+     * @return the number of cells written
+     */
+    public int generateMoves(int radius, int[] out) {
+        long[] region = scratchA;
+        long[] shifted = scratchB;
+        long[] grown = scratchC;
+        for (int i = 0; i < region.length; i++) {
+            region[i] = black[i] | white[i];
+        }
+        // Dilate the occupied cells one step at a time in each of the eight directions
+        for (int step = 0; step < radius; step++) {
+            System.arraycopy(region, 0, grown, 0, region.length);
+            for (int shift : lineShifts) {
+                shiftRight(region, shift, shifted);
+                for (int i = 0; i < grown.length; i++) {
+                    grown[i] |= shifted[i];
+                }
+                shiftLeft(region, shift, shifted);
+                for (int i = 0; i < grown.length; i++) {
+                    grown[i] |= shifted[i];
+                }
+            }
+            for (int i = 0; i < region.length; i++) {
+                region[i] = grown[i] & cellMask[i];
+            }
+        }
+        int count = 0;
+        for (int w = 0; w < region.length; w++) {
+            long candidates = region[w] & ~(black[w] | white[w]);
+            while (candidates != 0) {
+                int index = (w << 6) + Long.numberOfTrailingZeros(candidates);
+                out[count++] = (index / stride) * boardSize + index % stride;
+                candidates &= candidates - 1;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Checks, word-parallel, whether the given color has five (or more) stones in a row anywhere on the board.
+     */
+    public boolean hasFive(boolean isBlack) {
+        long[] stones = isBlack ? black : white;
+        for (int shift : lineShifts) {
+            // pairs: a stone at i and i + shift
+            shiftRight(stones, shift, scratchA);
+            for (int i = 0; i < scratchA.length; i++) {
+                scratchA[i] &= stones[i];
+            }
+            // quads: a pair at i and i + 2 * shift
+            shiftRight(scratchA, 2 * shift, scratchB);
+            for (int i = 0; i < scratchB.length; i++) {
+                scratchB[i] &= scratchA[i];
+            }
+            // fives: a quad at i and a stone at i + 4 * shift
+            shiftRight(stones, 4 * shift, scratchC);
+            for (int i = 0; i < scratchC.length; i++) {
+                if ((scratchB[i] & scratchC[i]) != 0) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks whether the stone at the given position is part of five (or more) stones in a row. This only scans
+     * the four lines through the cell, so it is the cheap check to run right after a move.
+     */
+    public boolean isFiveAt(int posX, int posY) {
+        int color = get(posX, posY);
+        if (color == 0) {
+            return false;
+        }
+        for (int[] dir : DIRECTIONS) {
+            int count = 1;
+            for (int sign = -1; sign <= 1; sign += 2) {
+                int x = posX + sign * dir[0];
+                int y = posY + sign * dir[1];
+                while (x >= 0 && x < boardSize && y >= 0 && y < boardSize && get(x, y) == color) {
+                    count++;
+                    x += sign * dir[0];
+                    y += sign * dir[1];
+                }
+            }
+            if (count >= 5) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Moves every bit from index i to index i - shift
+    private static void shiftRight(long[] src, int shift, long[] dst) {
+        int wordShift = shift >>> 6;
+        int bitShift = shift & 63;
+        for (int i = 0; i < dst.length; i++) {
+            int from = i + wordShift;
+            long value = from < src.length ? src[from] >>> bitShift : 0;
+            if (bitShift != 0 && from + 1 < src.length) {
+                value |= src[from + 1] << (64 - bitShift);
+            }
+            dst[i] = value;
+        }
+    }
+
+    // Moves every bit from index i to index i + shift
+    private static void shiftLeft(long[] src, int shift, long[] dst) {
+        int wordShift = shift >>> 6;
+        int bitShift = shift & 63;
+        for (int i = dst.length - 1; i >= 0; i--) {
+            int from = i - wordShift;
+            long value = from >= 0 ? src[from] << bitShift : 0;
+            if (bitShift != 0 && from - 1 >= 0) {
+                value |= src[from - 1] >>> (64 - bitShift);
+            }
+            dst[i] = value;
+        }
+    }
+}
@@ -1,19 +1,33 @@
-import java.awt.event.MouseListener;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
 
+/**
+ * The state of a game: the stones on the board, with the bitboard, pattern scores and hash kept in sync with them.
+ * The board has no GUI; a GUI (or anything else that follows the game) subscribes as a {@link BoardListener}.
+ */
 public class Board {
     // Instance variables
-    private BoardGUI gui; // The graphical user interface for the board
+    private volatile List<BoardListener> listeners = List.of(); // Created on the first addListener
     private int[][] boardMatrix; // A 2D array representing the state of the board
     // 0: Empty, 1: White, 2: Black
+    private BitBoard bitBoard; // Packed copy of boardMatrix used for move generation and win detection
+    private IncrementalEvaluator evaluator; // Per-line pattern scores, updated on every move
+    private long hash; // Zobrist hash of the stones on the board
+    // Zobrist hashes of the 8 symmetric copies of the position, indexed by symmetry; entry 0 is unused (it is hash)
+    private final long[] symmetricHashes = new long[Symmetry.COUNT];
+    private final int[][] symmetryTable; // Cell mapping of every symmetry, shared by all boards of this size
+    private int lastMove = -1; // The last stone placed, as row * boardSize + column, or -1 if unknown
     private static final int EMPTY = 0;
     private static final int WHITE = 1;
     private static final int BLACK = 2;
 
-    public Board(int sideLength, int boardSize) {
-        gui = new BoardGUI(sideLength, boardSize);
+    // Creates an empty board of boardSize x boardSize cells
+    public Board(int boardSize) {
         boardMatrix = new int[boardSize][boardSize];
+        bitBoard = new BitBoard(boardSize);
+        evaluator = new IncrementalEvaluator(boardMatrix);
+        symmetryTable = Symmetry.table(boardSize);
     }
 
     public Board(Board board) {
@@ -22,6 +36,12 @@ public class Board {
         for (int i = 0; i < matrixToCopy.length; i++) {
             System.arraycopy(matrixToCopy[i], 0, boardMatrix[i], 0, matrixToCopy.length);
         }
+        bitBoard = new BitBoard(board.bitBoard);
+        evaluator = new IncrementalEvaluator(boardMatrix, board.evaluator);
+        hash = board.hash;
+        System.arraycopy(board.symmetricHashes, 0, symmetricHashes, 0, Symmetry.COUNT);
+        symmetryTable = board.symmetryTable;
+        lastMove = board.lastMove;
     }
 
     // Returns the size of the board
@@ -29,130 +49,239 @@ public class Board {
         return boardMatrix.length;
     }
 
-    // Removes the stone at the given position from the board (without updating the GUI)
+    // Removes the stone at the given position from the board (without telling the listeners)
     public void removePiece(int posX, int posY) {
+        if (boardMatrix[posY][posX] != EMPTY) {
+            hash ^= Zobrist.key(posX, posY, boardMatrix[posY][posX] == BLACK);
+            toggleSymmetricHashes(posX, posY, boardMatrix[posY][posX] == BLACK);
+        }
         boardMatrix[posY][posX] = EMPTY;
+        if (lastMove == posY * boardMatrix.length + posX) {
+            lastMove = -1;
+        }
+        bitBoard.removePiece(posX, posY);
+        evaluator.pieceRemoved(posX, posY);
     }
 
-    // Adds a stone of the specified color at the given position to the board (without updating the GUI)
+    // Adds a stone of the specified color at the given position to the board (without telling the listeners)
     public void addPieceNoGUI(int posX, int posY, boolean black) {
+        boolean wasEmpty = boardMatrix[posY][posX] == EMPTY;
+        if (!wasEmpty) {
+            hash ^= Zobrist.key(posX, posY, boardMatrix[posY][posX] == BLACK);
+            toggleSymmetricHashes(posX, posY, boardMatrix[posY][posX] == BLACK);
+        }
+        hash ^= Zobrist.key(posX, posY, black);
+        toggleSymmetricHashes(posX, posY, black);
         boardMatrix[posY][posX] = black ? BLACK : WHITE;
+        lastMove = posY * boardMatrix.length + posX;
+        bitBoard.addPiece(posX, posY, black);
+        if (wasEmpty) {
+            evaluator.pieceAdded(posX, posY);
+        } else {
+            evaluator.pieceChanged(posX, posY);
+        }
     }
 
-    // Adds a stone of the specified color at the given position to the board (and updates the GUI)
+    // Plays a stone of the specified color at the given position and tells the listeners; returns false if the cell
+    // is taken
     public boolean addPiece(int posX, int posY, boolean black) {
         // Check whether the cell is empty or not
         if (boardMatrix[posY][posX] != EMPTY) {
             return false;
         }
-        gui.drawPiece(posX, posY, black);
+        hash ^= Zobrist.key(posX, posY, black);
+        toggleSymmetricHashes(posX, posY, black);
         boardMatrix[posY][posX] = black ? BLACK : WHITE;
+        lastMove = posY * boardMatrix.length + posX;
+        bitBoard.addPiece(posX, posY, black);
+        evaluator.pieceAdded(posX, posY);
+        for (BoardListener listener : listeners) {
+            listener.pieceAdded(posX, posY, black);
+        }
         return true;
     }
 
-    // Generates a list of all the possible moves for the current state of the board
+    // XORs a stone's key into the hashes of the symmetric copies of the position
+    private void toggleSymmetricHashes(int posX, int posY, boolean black) {
+        int size = boardMatrix.length;
+        int cell = posY * size + posX;
+        for (int s = 1; s < Symmetry.COUNT; s++) {
+            int mapped = symmetryTable[s][cell];
+            symmetricHashes[s] ^= Zobrist.key(mapped % size, mapped / size, black);
+        }
+    }
+
+    // Generates a list of all the possible moves for the current state of the board:
+    // empty cells that have at least one stone in an adjacent cell
     public ArrayList<int[]> getAvailableMoves() {
-        ArrayList<int[]> moveList = new ArrayList<>();
-        int boardSize = boardMatrix.length;
-
-// Look for empty cells that have at least one stone in an adjacent cell
-        for (int i = 0; i < boardSize; i++) {
-            for (int j = 0; j < boardSize; j++) {
-                // If the cell is not empty, continue to the next cell
-                if (boardMatrix[i][j] > EMPTY) {
-                    continue;
-                }
-                boolean canAdd = false;
-                if (i > 0) {
-                    if (j > 0 && (boardMatrix[i - 1][j - 1] > EMPTY || boardMatrix[i][j - 1] > EMPTY)) {
-                        canAdd = true;
-                    }
-                    if (j < boardSize - 1 && (boardMatrix[i - 1][j + 1] > EMPTY || boardMatrix[i][j + 1] > EMPTY)) {
-                        canAdd = true;
-                    }
-                    if (boardMatrix[i - 1][j] > EMPTY) {
-                        canAdd = true;
-                    }
-                }
-                if (i < boardSize - 1) {
-                    if (j > 0 && (boardMatrix[i + 1][j - 1] > EMPTY || boardMatrix[i][j - 1] > EMPTY)) {
-                        canAdd = true;
-                    }
-                    if (j < boardSize - 1 && (boardMatrix[i + 1][j + 1] > EMPTY || boardMatrix[i][j + 1] > EMPTY)) {
-                        canAdd = true;
-                    }
-                    if (boardMatrix[i + 1][j] > EMPTY) {
-                        canAdd = true;
-                    }
-                }
-                // If the cell has at least one adjacent stone, add it to the list of possible moves
-                if (canAdd) {
-                    int[] move = {i, j};
-                    moveList.add(move);
-                }
+        return bitBoard.getAvailableMoves();
+    }
+
+    // Returns true if the given color has five stones in a row anywhere on the board
+    public boolean hasFive(boolean black) {
+        return bitBoard.hasFive(black);
+    }
+
+    // Returns true if the stone at the given position completes five in a row
+    public boolean isFiveAt(int posX, int posY) {
+        return bitBoard.isFiveAt(posX, posY);
+    }
+
+    /**
+     * Returns the packed bitboard kept in sync with the board matrix.
+     *
+     * @return the bitboard of the current position
+     */
+    public BitBoard getBitBoard() {
+        return bitBoard;
+    }
+
+    /**
+     * Returns the Zobrist hash of the stones on the board. It is updated incrementally by every add and remove.
+     *
+     * @return the hash of the current position
+     */
+    public long getHash() {
+        return hash;
+    }
+
+    /**
+     * Returns the Zobrist hash of a symmetric copy of the position: the hash the board would have if its stones were
+     * mapped through the symmetry. Like the hash, it is updated incrementally.
+     *
+     * @param symmetry the symmetry, 0 to 7; 0 gives the board's own hash
+     * @return the hash of the symmetric copy
+     */
+    public long getSymmetricHash(int symmetry) {
+        return symmetry == Symmetry.IDENTITY ? hash : symmetricHashes[symmetry];
+    }
+
+    /**
+     * Returns the symmetry that maps this position to its canonical form, the symmetric copy with the smallest
+     * hash as an unsigned number. A position that is symmetric itself has several; the lowest one is returned.
+     *
+     * @return the canonical symmetry, 0 to 7
+     */
+    public int getCanonicalSymmetry() {
+        int best = Symmetry.IDENTITY;
+        long bestHash = hash;
+        for (int s = 1; s < Symmetry.COUNT; s++) {
+            if (Long.compareUnsigned(symmetricHashes[s], bestHash) < 0) {
+                best = s;
+                bestHash = symmetricHashes[s];
             }
         }
-        return moveList;
+        return best;
     }
 
     /**
-     * Returns the current state of the board matrix.
+     * Returns the hash of the canonical form of the position. The 8 rotated and mirrored copies of a position have
+     * the same canonical hash, so a table keyed on it holds one entry for all of them.
      *
-     * @return the current state of the board matrix
+     * @return the canonical hash
      */
-    public int[][] getBoardMatrix() {
-        return boardMatrix;
+    public long getCanonicalHash() {
+        return getSymmetricHash(getCanonicalSymmetry());
+    }
+
+    /**
+     * Maps a move from this board's coordinates to those of the canonical form.
+     *
+     * @param move the move as row * boardSize + column
+     * @return the move in the canonical form
+     */
+    public int toCanonical(int move) {
+        return symmetryTable[getCanonicalSymmetry()][move];
     }
 
     /**
-     * Starts listening for mouse events on the board GUI.
+     * Maps a move of the canonical form back to this board's coordinates.
      *
-     * @param listener the mouse listener to attach to the board GUI
+     * @param canonicalMove the move in the canonical form, as row * boardSize + column
+     * @return the move on this board
      */
-    public void startListening(MouseListener listener) {
-        gui.attachListener(listener);
+    public int fromCanonical(int canonicalMove) {
+        return symmetryTable[Symmetry.inverse(getCanonicalSymmetry())][canonicalMove];
+    }
+
+    /**
+     * Returns the last stone placed, if it is known.
+     *
+     * @return the last move as row * boardSize + column, or -1 if unknown
+     */
+    public int getLastMove() {
+        return lastMove;
+    }
+
+    /**
+     * Returns the incremental pattern evaluator kept in sync with the board matrix.
+     *
+     * @return the evaluator of the current position
+     */
+    public IncrementalEvaluator getEvaluator() {
+        return evaluator;
+    }
+
+    /**
+     * Returns the current state of the board matrix. The matrix must be treated as read-only: stones are placed
+     * and removed through addPiece, addPieceNoGUI and removePiece so that the bitboard stays in sync.
+     *
+     * @return the current state of the board matrix
+     */
+    public int[][] getBoardMatrix() {
+        return boardMatrix;
     }
 
     /**
-     * Returns the board GUI associated with this board.
+     * Subscribes a listener to the events of the game played on this board. Copies of the board do not inherit it.
      *
-     * @return the board GUI associated with this board
+     * @param listener the listener, such as the board GUI
      */
-    public BoardGUI getGUI() {
-        return gui;
+    public synchronized void addListener(BoardListener listener) {
+        if (listeners.isEmpty()) {
+            listeners = new CopyOnWriteArrayList<>();
+        }
+        listeners.add(listener);
     }
 
     /**
-     * Converts an x-coordinate in pixels to a relative x-coordinate on the board.
+     * Unsubscribes a listener.
      *
-     * @param x the x-coordinate in pixels
-     * @return the relative x-coordinate on the board
+     * @param listener the listener to remove
      */
-    public int getScreenPosition(int x) {
-        return gui.getScreenPosition(x);
+    public synchronized void removeListener(BoardListener listener) {
+        if (!listeners.isEmpty()) {
+            listeners.remove(listener);
+        }
     }
 
     /**
-     * Prints the winner of the game to the board GUI.
+     * Announces the end of the game to the listeners.
      *
      * @param winner the winner of the game: 0 for a tie, 1 for white, or 2 for black
      */
-    public void printWinner(int winner) {
-        gui.printWinner(winner);
+    public void announceWinner(int winner) {
+        for (BoardListener listener : listeners) {
+            listener.gameOver(winner);
+        }
     }
 
     /**
-     * Signals to the board GUI that the AI is thinking.
+     * Signals to the listeners that the AI is thinking.
      */
     public void startAI() {
-        gui.startAI(true);
+        for (BoardListener listener : listeners) {
+            listener.thinkingChanged(true);
+        }
     }
 
     /**
-     * Signals to the board GUI that the AI has finished thinking.
+     * Signals to the listeners that the AI has finished thinking.
      */
     public void stopAI() {
-        gui.startAI(false);
+        for (BoardListener listener : listeners) {
+            listener.thinkingChanged(false);
+        }
     }
 
     public List<int[]> getPossibleMoves() {
@@ -167,15 +296,44 @@ public class Board {
         return possibleMoves;
     }
 
+    /**
+     * Returns the winner of the game: 0 if nobody has five in a row yet, 1 for white, or 2 for black. When the last
+     * move is known only the four lines through it are checked, since a game ends as soon as five are made.
+     *
+     * @return the winner of the game
+     */
+    public int getWinner() {
+        if (lastMove >= 0) {
+            int posX = lastMove % boardMatrix.length;
+            int posY = lastMove / boardMatrix.length;
+            return bitBoard.isFiveAt(posX, posY) ? boardMatrix[posY][posX] : EMPTY;
+        }
+        if (bitBoard.hasFive(true)) {
+            return BLACK;
+        }
+        return bitBoard.hasFive(false) ? WHITE : EMPTY;
+    }
+
+    /**
+     * Returns whether the game is over: someone has five in a row or the board is full.
+     *
+     * @return true if no more moves can be played
+     */
     public boolean isTerminal() {
-        // This is a simple placeholder. In a real Gomoku game, you would need to check if there are five pieces in a row for either player.
-        return getPossibleMoves().isEmpty();
+        return getWinner() != EMPTY || bitBoard.getStoneCount() == boardMatrix.length * boardMatrix.length;
     }
 
+    /**
+     * Returns the result of the game for the given player.
+     *
+     * @param player 1 for white or 2 for black
+     * @return 1 if the player has won, -1 if the player has lost, and 0 for a draw or an unfinished game
+     */
     public int getReward(int player) {
-        // This is a simple placeholder. In a real Gomoku game, you would need to check if the player has won and return 1 if yes, 0 if the game is a draw, and -1 if the player has lost.
-        return 0;
+        int winner = getWinner();
+        if (winner == EMPTY) {
+            return 0;
+        }
+        return winner == player ? 1 : -1;
     }
-
-
-}
\ No newline at end of file
+}
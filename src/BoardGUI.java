@@ -12,8 +12,13 @@ import java.io.File;
 import java.io.IOException;
 import javax.imageio.ImageIO;
 import javax.swing.JPanel;
+import javax.swing.SwingUtilities;
 
-public class BoardGUI extends JPanel {
+/**
+ * Draws a game: subscribe it to a {@link Board} with {@link Board#addListener(BoardListener)}. The events are drawn
+ * on the event dispatch thread, so the thread playing the game does not wait for the drawing.
+ */
+public class BoardGUI extends JPanel implements BoardListener {
 
     private Graphics2D g2D;
     private BufferedImage image;
@@ -155,6 +160,21 @@ public class BoardGUI extends JPanel {
         g2D.drawString(text, x, y);
     }
 
+    @Override
+    public void pieceAdded(int posX, int posY, boolean black) {
+        SwingUtilities.invokeLater(() -> drawPiece(posX, posY, black));
+    }
+
+    @Override
+    public void thinkingChanged(boolean thinking) {
+        SwingUtilities.invokeLater(() -> startAI(thinking));
+    }
+
+    @Override
+    public void gameOver(int winner) {
+        SwingUtilities.invokeLater(() -> printWinner(winner));
+    }
+
     public void attachListener(MouseListener listener) {
         addMouseListener(listener);
     }
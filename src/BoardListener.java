@@ -0,0 +1,31 @@
+/**
+ * Receives the events of a game played on a {@link Board}, such as the stones played and the end of the game. The
+ * board GUI is one; the board itself knows nothing about drawing.
+ * <p>
+ * Only the moves of the game are reported: the stones a search places and removes on its own board copies are not.
+ * The methods are called on the thread that changed the board.
+ */
+public interface BoardListener {
+    /**
+     * Called after a stone has been played.
+     *
+     * @param posX  the column of the stone
+     * @param posY  the row of the stone
+     * @param black whether the stone is black
+     */
+    void pieceAdded(int posX, int posY, boolean black);
+
+    /**
+     * Called when the AI starts or stops thinking about its move.
+     *
+     * @param thinking whether the AI is thinking
+     */
+    void thinkingChanged(boolean thinking);
+
+    /**
+     * Called when the game is over.
+     *
+     * @param winner 0 for a tie, 1 for white, or 2 for black
+     */
+    void gameOver(int winner);
+}
@@ -0,0 +1,27 @@
+/**
+ * A move-choosing engine that runs without a GUI, as used by the {@link MatchRunner}.
+ * <p>
+ * An engine is bound to its own board and always plays white on it. To have it play black, the caller keeps the
+ * engine's board with the colors of all stones swapped; the coordinates of the moves are the same either way.
+ */
+public interface Engine {
+    /**
+     * Chooses a move for white, who is to move on the engine's board. The board is left as it was.
+     *
+     * @return the move as {row, column}, or null if the engine has no move
+     */
+    int[] selectMove();
+
+    /**
+     * Returns how many positions (search nodes or playouts) the engine looked at for its last move.
+     *
+     * @return the number of positions, 0 if the engine does not count them
+     */
+    long getLastNodeCount();
+
+    /**
+     * Releases the engine's threads. The engine is not used afterwards.
+     */
+    default void close() {
+    }
+}
@@ -1,38 +1,68 @@
 import java.awt.event.MouseEvent;
 import java.awt.event.MouseListener;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
 
 public class Game {
     private Board board;
-    private boolean isPlayersTurn = true;
-    private boolean gameFinished = false;
+    private BoardGUI gui; // Where the human player clicks
+    // Written by the AI thread and read by the event dispatch thread
+    private volatile boolean isPlayersTurn = true;
+    private volatile boolean gameFinished = false;
     private int minimaxDepth = 3;
+    private long aiMoveTime = 0; // Milliseconds the AI may think per move; 0 searches to minimaxDepth instead
     private boolean aiStarts = true; // AI makes the first move
+    private int ponderReplies = 3; // Replies of the player the AI searches while the player thinks; 0: no pondering
     private Minimax ai;
-    public static final String cacheFile = "score_cache.ser";
+    public static final String cacheFile = "score_cache.bin";
+    private static final int CACHE_BITS = 16; // The cache file holds 2^16 search results (1.5 MB)
+    private PositionCache cache;
+    public static final String bookFile = "opening_book.bin";
+    private OpeningBook book;
     private int winner; // 0: There is no winner yet, 1: AI Wins, 2: Human Wins
-
-    public Game(Board board) {
+    // Handles the clicks one at a time, away from the event dispatch thread
+    private final ExecutorService aiThread = Executors.newSingleThreadExecutor(runnable -> {
+        Thread thread = new Thread(runnable, "game-ai");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    public Game(Board board, BoardGUI gui) {
         this.board = board;
+        this.gui = gui;
         ai = new Minimax(board);
+        ai.setThreads(Runtime.getRuntime().availableProcessors()); // search each move on all cores
         winner = 0;
     }
 
     /*
-     * Loads the cache and starts the game, enabling human player interactions.
+     * Loads the cache and the opening book and starts the game, enabling human player interactions.
      */
     public void start() {
-        // If the AI is making the first move, place a white stone in the middle of the board.
+        loadCache();
+        loadBook();
+        // If the AI is making the first move, play the book's first move, or place a white stone in the middle of
+        // the board.
         if (aiStarts) {
-            playMove(board.getBoardSize() / 2, board.getBoardSize() / 2, false);
+            int[] first = Minimax.bookMove(book, board);
+            if (first == null) {
+                playMove(board.getBoardSize() / 2, board.getBoardSize() / 2, false);
+            } else {
+                playMove(first[1], first[0], false);
+            }
+            aiThread.execute(this::ponder);
         }
         // Now it's human player's turn.
         // Make the board start listening for mouse clicks.
-        board.startListening(new MouseListener() {
+        gui.attachListener(new MouseListener() {
             public void mouseClicked(MouseEvent arg0) {
                 if (isPlayersTurn) {
                     isPlayersTurn = false;
                     // Handle the mouse click in another thread, so that we do not held the event dispatch thread busy.
-                    new Thread(new MouseClickHandler(arg0)).start();
+                    aiThread.execute(new MouseClickHandler(arg0));
                 }
             }
 
@@ -55,12 +85,27 @@ public class Game {
      */
     public void setAIDepth(int depth) {
         minimaxDepth = depth;
+        aiMoveTime = 0;
+    }
+
+    /*
+     * Sets how many milliseconds the AI may think per move. The AI searches deeper and deeper until the time runs out.
+     */
+    public void setAIMoveTime(long millis) {
+        aiMoveTime = millis;
     }
 
     public void setAIStarts(boolean aiStarts) {
         this.aiStarts = aiStarts;
     }
 
+    /*
+     * Sets how many of the player's likely replies the AI searches while the player thinks. 0 turns pondering off.
+     */
+    public void setPonderReplies(int ponderReplies) {
+        this.ponderReplies = ponderReplies;
+    }
+
     public class MouseClickHandler implements Runnable {
         private MouseEvent e;
 
@@ -74,30 +119,33 @@ public class Game {
             }
 
             // Find out which cell of the board do the clicked coordinates belong to.
-            int posX = board.getScreenPosition(e.getX());
-            int posY = board.getScreenPosition(e.getY());
+            int posX = gui.getScreenPosition(e.getX());
+            int posY = gui.getScreenPosition(e.getY());
 
             // Place a black stone to that cell.
-            if (!playMove(posX, posY, true)) {
+            if (board.getBoardMatrix()[posY][posX] != 0) {
                 // If the cell is already populated, do nothing.
                 isPlayersTurn = true;
                 return;
             }
+            // Pondering searches on the board's copies, but stop it before the board changes
+            ai.stopPondering();
+            playMove(posX, posY, true);
 
             // Check if the last move ends the game.
             winner = checkWinner();
             if (winner == 2) {
                 System.out.println("Player Won!");
-                board.printWinner(winner);
+                board.announceWinner(winner);
                 gameFinished = true;
                 return;
             }
 
             // Make the AI instance calculate a move.
-            int[] aiMove = ai.getNextMove(minimaxDepth);
+            int[] aiMove = aiMoveTime > 0 ? ai.getNextMoveWithinTime(aiMoveTime) : ai.getNextMove(minimaxDepth);
             if (aiMove == null) {
                 System.out.println("No possible moves left. Game Over.");
-                board.printWinner(0); // Prints "TIED!"
+                board.announceWinner(0); // Prints "TIED!"
                 gameFinished = true;
                 return;
             }
@@ -110,27 +158,76 @@ public class Game {
             winner = checkWinner();
             if (winner == 1) {
                 System.out.println("AI won!");
-                board.printWinner(winner);
+                board.announceWinner(winner);
                 gameFinished = true;
                 return;
             }
 
             if (board.getAvailableMoves().isEmpty()) {
                 System.out.println("No possible moves left. Game Over.");
-                board.printWinner(0); // Prints "TIED!"
+                board.announceWinner(0); // Prints "TIED!"
                 gameFinished = true;
                 return;
             }
 
             isPlayersTurn = true;
+            ponder();
+        }
+    }
+
+    /*
+     * Opens the persistent cache of search results, so that positions searched in earlier games are answered from
+     * it. The game still works without it, only slower.
+     */
+    private void loadCache() {
+        if (cache != null) {
+            return;
+        }
+        try {
+            cache = new PositionCache(Path.of(cacheFile), board.getBoardSize(), CACHE_BITS);
+        } catch (IOException e) {
+            System.err.println("Could not open the position cache " + cacheFile + ": " + e.getMessage());
+            return;
+        }
+        ai.setPositionCache(cache);
+        // Write the last results to the file when the game window is closed
+        Runtime.getRuntime().addShutdownHook(new Thread(() -> {
+            try {
+                cache.close();
+            } catch (IOException e) {
+                System.err.println("Could not close the position cache " + cacheFile + ": " + e.getMessage());
+            }
+        }));
+    }
+
+    /*
+     * Opens the opening book, if there is one, so that the early moves are played from it without a search.
+     */
+    private void loadBook() {
+        if (book != null || !Files.exists(Path.of(bookFile))) {
+            return;
+        }
+        try {
+            book = new OpeningBook(Path.of(bookFile));
+        } catch (IOException e) {
+            System.err.println("Could not open the opening book " + bookFile + ": " + e.getMessage());
+            return;
+        }
+        ai.setOpeningBook(book);
+    }
+
+    // Lets the AI search the player's likely replies until the player moves; runs on the AI thread
+    private void ponder() {
+        if (ponderReplies > 0 && !gameFinished) {
+            ai.startPondering(ponderReplies);
         }
     }
 
     private int checkWinner() {
-        if (Minimax.getScore(board, true, false) >= Minimax.getWinningScore()) {
+        if (board.hasFive(true)) {
             return 2;
         }
-        if (Minimax.getScore(board, false, true) >= Minimax.getWinningScore()) {
+        if (board.hasFive(false)) {
             return 1;
         }
         return 0;
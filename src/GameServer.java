@@ -0,0 +1,604 @@
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Hosts many human-vs-AI games at once behind a JSON-over-HTTP API on the loopback interface.
+ * <p>
+ * Usage: {@code java GameServer [--port P] [--size S] [--workers W] [--queue Q] [--max-sessions N]
+ * [--idle-minutes M] [--max-depth D] [--max-time MS] [--book FILE]}
+ * <p>
+ * The human plays black and the AI plays white, as in the GUI game. The API:
+ * <ul>
+ *     <li>{@code POST /games} with {@code {"aiStarts": true, "depth": 3}} or {@code {"time": 500}} creates a game
+ *     and returns it, with status 201.</li>
+ *     <li>{@code GET /games/ID} returns the moves so far and the result.</li>
+ *     <li>{@code POST /games/ID/moves} with {@code {"row": 9, "col": 10}} plays the human's move and returns it
+ *     together with the AI's reply.</li>
+ *     <li>{@code DELETE /games/ID} ends a game.</li>
+ *     <li>{@code GET /status} returns the number of sessions, searches and rejections.</li>
+ *     <li>{@code GET /metrics} returns the {@link SearchMetrics} of all searches in the Prometheus text format.</li>
+ * </ul>
+ * A session is a board and its state, not a thread: thousands of open games cost a few kilobytes each. The searches
+ * run on a fixed pool of engine workers with a bounded queue. When the queue is full, a move is refused with status
+ * 503 and a Retry-After header instead of piling up, and so is a new game when the session limit is reached. Each
+ * engine worker keeps its own transposition table and uses it for every game it searches, since a position has the
+ * same hash whichever game it comes from. Games idle for longer than the idle timeout are dropped.
+ */
+public class GameServer {
+    private static final int TABLE_BITS = 18; // Transposition table of each engine worker: 2^18 entries
+    private static final int MAX_BODY_BYTES = 4096;
+    private static final int SPARE_HTTP_THREADS = 4; // Serve reads while every other HTTP thread waits for a search
+    private static final String RETRY_AFTER_SECONDS = "1";
+
+    private final int boardSize;
+    private final int maxSessions;
+    private final long idleNanos;
+    private final int maxDepth;
+    private final long maxTimeMillis;
+
+    private final Map<String, Session> sessions = new ConcurrentHashMap<>();
+    private final ThreadPoolExecutor engines;
+    private final ExecutorService httpPool;
+    private final ScheduledExecutorService reaper;
+    private final HttpServer server;
+    private volatile OpeningBook book; // Shared by all games, if set
+
+    // Each engine worker's transposition table, created by the worker on its first search
+    private final ThreadLocal<TranspositionTable> tables = ThreadLocal.withInitial(
+            () -> new TranspositionTable(TABLE_BITS, TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED));
+
+    private final AtomicLong searches = new AtomicLong();
+    private final AtomicLong rejectedMoves = new AtomicLong();
+    private final AtomicLong rejectedGames = new AtomicLong();
+
+    /**
+     * Creates a server on the loopback interface. It serves nothing until {@link #start()}.
+     *
+     * @param port          the TCP port, 0 for any free port
+     * @param boardSize     the side of every game's board
+     * @param workers       the number of searches running at the same time
+     * @param queueCapacity the number of searches that may wait for a worker; with 0, a move is refused whenever
+     *                      every worker is busy
+     * @param maxSessions   the number of open games
+     * @param idleMinutes   the minutes after which an untouched game is dropped
+     * @param maxDepth      the deepest search a game may ask for
+     * @param maxTimeMillis the longest search a game may ask for
+     * @throws IOException if the port cannot be bound
+     */
+    public GameServer(int port, int boardSize, int workers, int queueCapacity, int maxSessions, long idleMinutes,
+                      int maxDepth, long maxTimeMillis) throws IOException {
+        if (boardSize < 5 || boardSize > Zobrist.MAX_BOARD_SIZE) {
+            throw new IllegalArgumentException("boardSize must be between 5 and " + Zobrist.MAX_BOARD_SIZE + ": "
+                    + boardSize);
+        }
+        if (workers < 1 || queueCapacity < 0 || maxSessions < 1 || idleMinutes < 1 || maxDepth < 1
+                || maxTimeMillis < 1) {
+            throw new IllegalArgumentException("Server limits must be positive");
+        }
+        this.boardSize = boardSize;
+        this.maxSessions = maxSessions;
+        this.idleNanos = TimeUnit.MINUTES.toNanos(idleMinutes);
+        this.maxDepth = maxDepth;
+        this.maxTimeMillis = maxTimeMillis;
+        // A SynchronousQueue holds nothing: a search is admitted only if a worker takes it at once
+        BlockingQueue<Runnable> queue = queueCapacity == 0 ? new SynchronousQueue<>()
+                : new ArrayBlockingQueue<>(queueCapacity);
+        engines = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, queue,
+                daemonThreads("engine-worker"));
+        // Every admitted search may hold an HTTP thread while it waits, so there are enough of them for all
+        // admitted searches plus a few spare ones for the requests that do not search
+        httpPool = Executors.newFixedThreadPool(workers + queueCapacity + SPARE_HTTP_THREADS,
+                daemonThreads("server-http"));
+        reaper = Executors.newSingleThreadScheduledExecutor(daemonThreads("session-reaper"));
+        server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+        server.setExecutor(httpPool);
+        server.createContext("/games", this::handleGames);
+        server.createContext("/status", this::handleStatus);
+        server.createContext("/metrics", this::handleMetrics);
+    }
+
+    public static void main(String[] args) throws IOException {
+        int port = 8080;
+        int size = 19;
+        int workers = Runtime.getRuntime().availableProcessors();
+        int queue = 64;
+        int maxSessions = 10_000;
+        long idleMinutes = 30;
+        int maxDepth = 4;
+        long maxTime = 2000;
+        Path book = null;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--port":
+                    port = Integer.parseInt(args[++i]);
+                    break;
+                case "--size":
+                    size = Integer.parseInt(args[++i]);
+                    break;
+                case "--workers":
+                    workers = Integer.parseInt(args[++i]);
+                    break;
+                case "--queue":
+                    queue = Integer.parseInt(args[++i]);
+                    break;
+                case "--max-sessions":
+                    maxSessions = Integer.parseInt(args[++i]);
+                    break;
+                case "--idle-minutes":
+                    idleMinutes = Long.parseLong(args[++i]);
+                    break;
+                case "--max-depth":
+                    maxDepth = Integer.parseInt(args[++i]);
+                    break;
+                case "--max-time":
+                    maxTime = Long.parseLong(args[++i]);
+                    break;
+                case "--book":
+                    book = Path.of(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        GameServer gameServer = new GameServer(port, size, workers, queue, maxSessions, idleMinutes, maxDepth,
+                maxTime);
+        if (book != null) {
+            gameServer.setOpeningBook(new OpeningBook(book));
+        }
+        gameServer.start();
+        System.out.println("Serving games on http://localhost:" + gameServer.getPort() + "/games");
+    }
+
+    // Starts serving requests and dropping idle games, and makes the search metrics visible through JMX
+    public void start() {
+        SearchMetrics.registerMBean();
+        long period = Math.max(1, TimeUnit.NANOSECONDS.toSeconds(idleNanos) / 4);
+        reaper.scheduleAtFixedRate(this::dropIdleSessions, period, period, TimeUnit.SECONDS);
+        server.start();
+    }
+
+    // Stops serving, waiting up to delaySeconds for the requests being handled, and stops the worker threads
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        reaper.shutdownNow();
+        engines.shutdownNow();
+        httpPool.shutdownNow();
+    }
+
+    // Sets the opening book that answers the early moves of every game without a search; null disables it
+    public void setOpeningBook(OpeningBook book) {
+        this.book = book;
+    }
+
+    // Returns the port the server listens on
+    public int getPort() {
+        return server.getAddress().getPort();
+    }
+
+    private void handleGames(HttpExchange exchange) throws IOException {
+        try {
+            String[] path = exchange.getRequestURI().getPath().split("/");
+            String method = exchange.getRequestMethod();
+            // path is {"", "games"}, {"", "games", ID} or {"", "games", ID, "moves"}
+            if (path.length == 2 && method.equals("POST")) {
+                createGame(exchange);
+                return;
+            }
+            Session session = path.length >= 3 ? sessions.get(path[2]) : null;
+            if (session == null) {
+                send(exchange, 404, error("No such game"));
+            } else if (path.length == 3 && method.equals("GET")) {
+                session.touch();
+                send(exchange, 200, session.toJson());
+            } else if (path.length == 3 && method.equals("DELETE")) {
+                sessions.remove(session.id);
+                send(exchange, 204, null);
+            } else if (path.length == 4 && path[3].equals("moves") && method.equals("POST")) {
+                playMove(exchange, session);
+            } else {
+                send(exchange, 405, error("Method not allowed"));
+            }
+        } catch (IllegalArgumentException e) {
+            send(exchange, 400, error(e.getMessage()));
+        } catch (RuntimeException e) {
+            send(exchange, 500, error("Internal error: " + e));
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleStatus(HttpExchange exchange) throws IOException {
+        try {
+            String json = "{\"sessions\":" + sessions.size()
+                    + ",\"maxSessions\":" + maxSessions
+                    + ",\"searching\":" + engines.getActiveCount()
+                    + ",\"queued\":" + engines.getQueue().size()
+                    + ",\"workers\":" + engines.getMaximumPoolSize()
+                    + ",\"searches\":" + searches.get()
+                    + ",\"rejectedMoves\":" + rejectedMoves.get()
+                    + ",\"rejectedGames\":" + rejectedGames.get() + "}";
+            send(exchange, 200, json);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void handleMetrics(HttpExchange exchange) throws IOException {
+        try {
+            byte[] body = SearchMetrics.global().toPrometheus().getBytes(StandardCharsets.UTF_8);
+            exchange.getResponseHeaders().set("Content-Type", "text/plain; version=0.0.4; charset=utf-8");
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private void createGame(HttpExchange exchange) throws IOException {
+        Map<String, String> request = parseObject(readBody(exchange));
+        boolean aiStarts = Boolean.parseBoolean(request.getOrDefault("aiStarts", "false"));
+        int depth = intField(request, "depth", 3);
+        long time = intField(request, "time", 0);
+        if (depth < 1 || depth > maxDepth) {
+            throw new IllegalArgumentException("depth must be between 1 and " + maxDepth);
+        }
+        if (time < 0 || time > maxTimeMillis) {
+            throw new IllegalArgumentException("time must be between 0 and " + maxTimeMillis);
+        }
+        if (sessions.size() >= maxSessions) {
+            rejectedGames.incrementAndGet();
+            exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+            send(exchange, 503, error("Too many games"));
+            return;
+        }
+        Session session = new Session(UUID.randomUUID().toString(), boardSize, depth, time);
+        if (aiStarts) {
+            // The AI's first stone comes from the opening book, or else goes to the center, as in the GUI game
+            int[] first = Minimax.bookMove(book, session.board);
+            if (first == null) {
+                session.play(boardSize / 2, boardSize / 2, false);
+            } else {
+                session.play(first[0], first[1], false);
+            }
+        }
+        sessions.put(session.id, session);
+        send(exchange, 201, session.toJson());
+    }
+
+    private void playMove(HttpExchange exchange, Session session) throws IOException {
+        Map<String, String> request = parseObject(readBody(exchange));
+        int row = intField(request, "row", -1);
+        int col = intField(request, "col", -1);
+        if (row < 0 || row >= boardSize || col < 0 || col >= boardSize) {
+            throw new IllegalArgumentException("row and col must be between 0 and " + (boardSize - 1));
+        }
+        // One move at a time per game; a second request while the AI thinks is refused rather than queued
+        if (!session.busy.compareAndSet(false, true)) {
+            send(exchange, 409, error("The AI is still thinking"));
+            return;
+        }
+        try {
+            session.touch();
+            if (session.winner >= 0) {
+                send(exchange, 409, error("The game is over"));
+                return;
+            }
+            if (session.board.getBoardMatrix()[row][col] != 0) {
+                send(exchange, 409, error("The cell is not empty"));
+                return;
+            }
+            session.play(row, col, true);
+            if (session.winner >= 0) {
+                send(exchange, 200, session.toJson());
+                return;
+            }
+            Future<int[]> search;
+            try {
+                search = engines.submit(() -> search(session));
+            } catch (RejectedExecutionException e) {
+                // Not admitted: take the stone back, so the client can send the same move again later
+                session.undo();
+                rejectedMoves.incrementAndGet();
+                exchange.getResponseHeaders().set("Retry-After", RETRY_AFTER_SECONDS);
+                send(exchange, 503, error("Too many games are thinking, try again"));
+                return;
+            }
+            int[] reply;
+            try {
+                reply = search.get();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new IllegalStateException("Interrupted while the AI was thinking", e);
+            } catch (ExecutionException e) {
+                throw new IllegalStateException("The search failed", e.getCause());
+            }
+            if (reply != null) {
+                session.play(reply[0], reply[1], false);
+            }
+            send(exchange, 200, session.toJson());
+        } finally {
+            session.busy.set(false);
+        }
+    }
+
+    // Runs on an engine worker: finds the AI's reply to the human's last move
+    private int[] search(Session session) {
+        searches.incrementAndGet();
+        Minimax minimax = new Minimax(session.board, tables.get());
+        minimax.setVerbose(false);
+        minimax.setOpeningBook(book);
+        return session.time > 0 ? minimax.getNextMoveWithinTime(session.time) : minimax.getNextMove(session.depth);
+    }
+
+    private void dropIdleSessions() {
+        long now = System.nanoTime();
+        sessions.values().removeIf(session -> !session.busy.get() && now - session.lastAccess > idleNanos);
+    }
+
+    private static String readBody(HttpExchange exchange) throws IOException {
+        try (InputStream in = exchange.getRequestBody()) {
+            byte[] body = in.readNBytes(MAX_BODY_BYTES + 1);
+            if (body.length > MAX_BODY_BYTES) {
+                throw new IllegalArgumentException("The request body is too large");
+            }
+            return new String(body, StandardCharsets.UTF_8);
+        }
+    }
+
+    private static void send(HttpExchange exchange, int status, String json) throws IOException {
+        if (json == null) {
+            exchange.sendResponseHeaders(status, -1);
+            return;
+        }
+        byte[] body = json.getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(status, body.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(body);
+        }
+    }
+
+    private static String error(String message) {
+        return "{\"error\":" + quote(message) + "}";
+    }
+
+    private static String quote(String text) {
+        StringBuilder quoted = new StringBuilder("\"");
+        for (int i = 0; i < text.length(); i++) {
+            char c = text.charAt(i);
+            if (c == '"' || c == '\\') {
+                quoted.append('\\').append(c);
+            } else if (c < 0x20) {
+                quoted.append(String.format("\\u%04x", (int) c));
+            } else {
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+
+    private static int intField(Map<String, String> object, String name, int defaultValue) {
+        String value = object.get(name);
+        if (value == null) {
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value);
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException(name + " must be an integer: " + value);
+        }
+    }
+
+    /**
+     * Parses a flat JSON object, such as a request of this API. Nested objects and arrays are not supported.
+     *
+     * @param json the text of the object; blank text is an empty object
+     * @return the members, with strings unquoted and numbers, booleans and null as written
+     */
+    static Map<String, String> parseObject(String json) {
+        Map<String, String> members = new HashMap<>();
+        int[] pos = {skipSpace(json, 0)};
+        if (pos[0] == json.length()) {
+            return members;
+        }
+        expect(json, pos, '{');
+        if (json.charAt(pos[0]) == '}') {
+            pos[0]++;
+        } else {
+            while (true) {
+                String name = parseString(json, pos);
+                expect(json, pos, ':');
+                String value = json.charAt(pos[0]) == '"' ? parseString(json, pos) : parseLiteral(json, pos);
+                members.put(name, value);
+                pos[0] = skipSpace(json, pos[0]);
+                if (pos[0] < json.length() && json.charAt(pos[0]) == ',') {
+                    pos[0] = skipSpace(json, pos[0] + 1);
+                    continue;
+                }
+                expect(json, pos, '}');
+                break;
+            }
+        }
+        if (skipSpace(json, pos[0]) != json.length()) {
+            throw new IllegalArgumentException("Unexpected text after the JSON object");
+        }
+        return members;
+    }
+
+    // Reads the expected character at pos and the white space after it
+    private static void expect(String json, int[] pos, char expected) {
+        if (pos[0] >= json.length() || json.charAt(pos[0]) != expected) {
+            throw new IllegalArgumentException("Bad JSON: expected '" + expected + "' at " + pos[0]);
+        }
+        pos[0] = skipSpace(json, pos[0] + 1);
+    }
+
+    private static String parseString(String json, int[] pos) {
+        if (pos[0] >= json.length() || json.charAt(pos[0]) != '"') {
+            throw new IllegalArgumentException("Bad JSON: expected a string at " + pos[0]);
+        }
+        StringBuilder text = new StringBuilder();
+        int i = pos[0] + 1;
+        while (i < json.length() && json.charAt(i) != '"') {
+            char c = json.charAt(i++);
+            if (c == '\\' && i < json.length()) {
+                char escaped = json.charAt(i++);
+                switch (escaped) {
+                    case 'n':
+                        text.append('\n');
+                        break;
+                    case 't':
+                        text.append('\t');
+                        break;
+                    case 'r':
+                        text.append('\r');
+                        break;
+                    case 'b':
+                        text.append('\b');
+                        break;
+                    case 'f':
+                        text.append('\f');
+                        break;
+                    case 'u':
+                        if (i + 4 > json.length()) {
+                            throw new IllegalArgumentException("Bad JSON: short \\u escape");
+                        }
+                        text.append((char) Integer.parseInt(json.substring(i, i + 4), 16));
+                        i += 4;
+                        break;
+                    default:
+                        text.append(escaped);
+                }
+            } else {
+                text.append(c);
+            }
+        }
+        if (i >= json.length()) {
+            throw new IllegalArgumentException("Bad JSON: unterminated string");
+        }
+        pos[0] = skipSpace(json, i + 1);
+        return text.toString();
+    }
+
+    // A number, true, false or null
+    private static String parseLiteral(String json, int[] pos) {
+        int start = pos[0];
+        int end = start;
+        while (end < json.length()
+                && (Character.isLetterOrDigit(json.charAt(end)) || "+-.".indexOf(json.charAt(end)) >= 0)) {
+            end++;
+        }
+        if (end == start) {
+            throw new IllegalArgumentException("Bad JSON: expected a value at " + start);
+        }
+        pos[0] = end;
+        return json.substring(start, end);
+    }
+
+    private static int skipSpace(String json, int pos) {
+        while (pos < json.length() && Character.isWhitespace(json.charAt(pos))) {
+            pos++;
+        }
+        return pos;
+    }
+
+    private static ThreadFactory daemonThreads(String name) {
+        AtomicInteger count = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, name + "-" + count.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    // One game: its board, the moves so far and the result. The board only changes while the session is busy.
+    private static final class Session {
+        private final String id;
+        private final Board board;
+        private final int depth;
+        private final long time;
+        private final List<int[]> moves = new ArrayList<>(); // {row, col, color}, guarded by this
+        private final AtomicBoolean busy = new AtomicBoolean();
+        private volatile int winner = -1; // -1 while playing, then 0 for a tie, 1 for white or 2 for black
+        private volatile long lastAccess = System.nanoTime();
+
+        Session(String id, int boardSize, int depth, long time) {
+            this.id = id;
+            this.board = new Board(boardSize);
+            this.depth = depth;
+            this.time = time;
+        }
+
+        void touch() {
+            lastAccess = System.nanoTime();
+        }
+
+        // Places a stone and records the result if it ends the game
+        synchronized void play(int row, int col, boolean black) {
+            board.addPieceNoGUI(col, row, black);
+            moves.add(new int[]{row, col, black ? 2 : 1});
+            if (board.isFiveAt(col, row)) {
+                winner = black ? 2 : 1;
+            } else if (board.getAvailableMoves().isEmpty()) {
+                winner = 0;
+            }
+        }
+
+        // Takes back the last stone
+        synchronized void undo() {
+            int[] move = moves.remove(moves.size() - 1);
+            board.removePiece(move[1], move[0]);
+            winner = -1;
+        }
+
+        synchronized String toJson() {
+            StringBuilder json = new StringBuilder();
+            json.append("{\"id\":").append(quote(id))
+                    .append(",\"size\":").append(board.getBoardSize())
+                    .append(",\"moves\":[");
+            for (int i = 0; i < moves.size(); i++) {
+                int[] move = moves.get(i);
+                json.append(i == 0 ? "" : ",")
+                        .append("{\"row\":").append(move[0])
+                        .append(",\"col\":").append(move[1])
+                        .append(",\"color\":").append(move[2] == 2 ? "\"black\"" : "\"white\"").append('}');
+            }
+            json.append("],\"finished\":").append(winner >= 0)
+                    .append(",\"winner\":").append(winner < 0 ? "null"
+                            : winner == 0 ? "\"draw\"" : winner == 2 ? "\"black\"" : "\"white\"")
+                    .append('}');
+            return json.toString();
+        }
+    }
+}
@@ -0,0 +1,205 @@
+import java.util.Arrays;
+
+/**
+ * Keeps the pattern score of every line on the board (rows, columns and both diagonal families) and updates it
+ * incrementally as stones are added and removed, so that {@link Minimax#getScore(Board, boolean, boolean)} does not
+ * have to rescan the whole board at every leaf.
+ * <p>
+ * A move only changes the four lines through its cell, so adding a stone rescans at most 4 x 19 cells, and removing
+ * the most recently added stone restores the saved line scores without scanning at all. Lines are scored by
+ * {@link LinePatterns}.
+ */
+public class IncrementalEvaluator {
+    // Number of scores kept per line: {white, black} x {opponent's turn, own turn}
+    private static final int SCORES_PER_LINE = 4;
+    private static final int FRAME_SIZE = 1 + 4 * SCORES_PER_LINE;
+
+    private final int[][] boardMatrix; // The matrix of the board this evaluator follows
+    private final int boardSize;
+    private final int[] lineScores; // SCORES_PER_LINE scores for every line
+    private final int[] totals = new int[SCORES_PER_LINE]; // Sum of lineScores for every score kind
+    private final int[] lines = new int[4]; // Scratch: the four lines through a cell
+    private final int[] geometry = new int[5]; // Scratch: start row, start column, row step, column step, length
+    private final int[] marks; // Per cell, the last threatCells call that collected it
+    private int mark;
+
+    // Undo stack: for every added stone, its cell followed by the previous scores of its four lines
+    private int[] undoStack = new int[FRAME_SIZE * 32];
+    private int undoSize;
+
+    public IncrementalEvaluator(int[][] boardMatrix) {
+        this.boardMatrix = boardMatrix;
+        this.boardSize = boardMatrix.length;
+        lineScores = new int[(6 * boardSize - 2) * SCORES_PER_LINE];
+        marks = new int[boardSize * boardSize];
+        for (int line = 0; line < lineScores.length / SCORES_PER_LINE; line++) {
+            scanLine(line);
+        }
+    }
+
+    // Creates an evaluator for a copied matrix, taking over the line scores of the evaluator it was copied from
+    public IncrementalEvaluator(int[][] boardMatrix, IncrementalEvaluator other) {
+        this.boardMatrix = boardMatrix;
+        this.boardSize = boardMatrix.length;
+        lineScores = other.lineScores.clone();
+        marks = new int[boardSize * boardSize];
+        System.arraycopy(other.totals, 0, totals, 0, totals.length);
+    }
+
+    /**
+     * Returns the pattern score of the given player over all lines.
+     *
+     * @param forBlack   whether to score black's stones
+     * @param blacksTurn whether it is black's turn
+     * @return the pattern score of the player
+     */
+    public int getScore(boolean forBlack, boolean blacksTurn) {
+        return totals[scoreIndex(forBlack, forBlack == blacksTurn)];
+    }
+
+    /**
+     * Collects the empty cells of the lines on which a player's own-turn pattern score reaches a threshold, such as
+     * the lines holding a four or an open three, so that a threat can be looked for without scanning the board.
+     * A cell on two such lines is collected once.
+     *
+     * @param forBlack whether to look at black's lines
+     * @param minScore the lowest line score to collect
+     * @param out      receives the cells as row * boardSize + column
+     * @return the number of cells collected
+     */
+    public int threatCells(boolean forBlack, int minScore, int[] out) {
+        int scoreIndex = scoreIndex(forBlack, true);
+        int count = 0;
+        mark++;
+        for (int line = 0; line < lineScores.length / SCORES_PER_LINE; line++) {
+            if (lineScores[line * SCORES_PER_LINE + scoreIndex] < minScore) {
+                continue;
+            }
+            lineGeometry(line);
+            int i = geometry[0];
+            int j = geometry[1];
+            for (int k = 0; k < geometry[4]; k++, i += geometry[2], j += geometry[3]) {
+                int cell = i * boardSize + j;
+                if (boardMatrix[i][j] == 0 && marks[cell] != mark) {
+                    marks[cell] = mark;
+                    out[count++] = cell;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Must be called after a stone has been placed on the matrix
+    public void pieceAdded(int posX, int posY) {
+        linesThrough(posY, posX);
+        if (undoSize + FRAME_SIZE > undoStack.length) {
+            undoStack = Arrays.copyOf(undoStack, undoStack.length * 2);
+        }
+        undoStack[undoSize++] = posY * boardSize + posX;
+        for (int line : lines) {
+            System.arraycopy(lineScores, line * SCORES_PER_LINE, undoStack, undoSize, SCORES_PER_LINE);
+            undoSize += SCORES_PER_LINE;
+            scanLine(line);
+        }
+    }
+
+    // Must be called after a stone has been removed from the matrix
+    public void pieceRemoved(int posX, int posY) {
+        linesThrough(posY, posX);
+        int frame = undoSize - FRAME_SIZE;
+        if (frame >= 0 && undoStack[frame] == posY * boardSize + posX) {
+            // Undoing the most recent move: restore the saved line scores
+            int offset = frame + 1;
+            for (int line : lines) {
+                for (int s = 0; s < SCORES_PER_LINE; s++) {
+                    totals[s] += undoStack[offset] - lineScores[line * SCORES_PER_LINE + s];
+                    lineScores[line * SCORES_PER_LINE + s] = undoStack[offset++];
+                }
+            }
+            undoSize = frame;
+        } else {
+            pieceChanged(posX, posY);
+        }
+    }
+
+    // Must be called after any other change of a cell (e.g. a stone replaced by one of the other color).
+    // The saved scores no longer describe the earlier positions, so the undo stack is dropped.
+    public void pieceChanged(int posX, int posY) {
+        linesThrough(posY, posX);
+        for (int line : lines) {
+            scanLine(line);
+        }
+        undoSize = 0;
+    }
+
+    private static int scoreIndex(boolean forBlack, boolean currentTurn) {
+        return (forBlack ? 2 : 0) + (currentTurn ? 1 : 0);
+    }
+
+    // Fills lines with the row, column and both diagonals through the cell (i, j)
+    private void linesThrough(int i, int j) {
+        lines[0] = i;
+        lines[1] = boardSize + j;
+        lines[2] = 2 * boardSize + (i + j);
+        lines[3] = 4 * boardSize - 1 + (i - j + boardSize - 1);
+    }
+
+    // Recomputes the scores of one line and updates the totals
+    private void scanLine(int line) {
+        lineGeometry(line);
+        for (int color = 1; color <= 2; color++) {
+            long scores = LinePatterns.scoreLine(boardMatrix, geometry[0], geometry[1], geometry[2], geometry[3],
+                    geometry[4], color);
+            setLineScore(line, scoreIndex(color == 2, true), LinePatterns.ownTurn(scores));
+            setLineScore(line, scoreIndex(color == 2, false), LinePatterns.otherTurn(scores));
+        }
+    }
+
+    // Fills geometry with the first cell, the step and the length of a line
+    private void lineGeometry(int line) {
+        int n = boardSize;
+        int startI;
+        int startJ;
+        int stepI;
+        int stepJ;
+        int length;
+        if (line < n) { // row
+            startI = line;
+            startJ = 0;
+            stepI = 0;
+            stepJ = 1;
+            length = n;
+        } else if (line < 2 * n) { // column
+            startI = 0;
+            startJ = line - n;
+            stepI = 1;
+            stepJ = 0;
+            length = n;
+        } else if (line < 4 * n - 1) { // diagonal with i + j == k
+            int k = line - 2 * n;
+            startI = Math.max(0, k - n + 1);
+            startJ = k - startI;
+            stepI = 1;
+            stepJ = -1;
+            length = Math.min(n - 1, k) - startI + 1;
+        } else { // diagonal with i - j == k
+            int k = line - (4 * n - 1) - (n - 1);
+            startI = Math.max(0, k);
+            startJ = startI - k;
+            stepI = 1;
+            stepJ = 1;
+            length = Math.min(n + k - 1, n - 1) - startI + 1;
+        }
+        geometry[0] = startI;
+        geometry[1] = startJ;
+        geometry[2] = stepI;
+        geometry[3] = stepJ;
+        geometry[4] = length;
+    }
+
+    private void setLineScore(int line, int scoreIndex, int score) {
+        int index = line * SCORES_PER_LINE + scoreIndex;
+        totals[scoreIndex] += score - lineScores[index];
+        lineScores[index] = score;
+    }
+}
@@ -0,0 +1,129 @@
+/**
+ * Table-driven pattern scores for one line of the board.
+ * <p>
+ * The own stones of a line are split into groups: stones joined directly or across a single empty cell, such as
+ * {@code XX}, {@code X_XX} or {@code XX_XX}. Every group is scored once, at its first stone, from the window of the
+ * 2 cells before that stone and the 5 cells from it on. A group is scored like a run of the same number of stones by
+ * {@link Minimax#getConsecutiveSetScore(int, int, boolean)}, with the blocked ends (opponent stones or the edge) as
+ * blocks, except that a broken four ({@code X_XXX}, {@code XX_XX}) is a four with one way to complete it.
+ * <p>
+ * A solid run of five or more is always scored as five, at its own first stone. This matters after a gap: in
+ * {@code X_XXXXX} the run belongs to the group of the first stone, whose window sees only a broken four.
+ * <p>
+ * Each cell is 2 bits (empty, own or blocked), so a window is a 16-bit code, and the score of every window is worked
+ * out once when the class is loaded. Scoring a line then shifts each cell into the code and adds one table entry.
+ */
+public final class LinePatterns {
+    // Cell states in a window
+    private static final int EMPTY = 0;
+    private static final int OWN = 1;
+    private static final int BLOCKED = 2;
+
+    private static final int BEFORE = 2; // Cells read before the first stone of a group
+    private static final int SPAN = 5; // Cells a group is read over, from its first stone
+    private static final int WINDOW = BEFORE + SPAN + 1; // Plus the cell after the span, for its end
+    private static final int TOP_SHIFT = 2 * (WINDOW - 1);
+    private static final int EDGE_CODE = 0xAAAA; // Every cell blocked
+
+    // Cell state by matrix value (0: empty, 1: white, 2: black), for each color
+    private static final int[] WHITE_STATES = {EMPTY, OWN, BLOCKED};
+    private static final int[] BLACK_STATES = {EMPTY, BLOCKED, OWN};
+
+    // Score of every window: the own-turn score in the high 32 bits, the opponent's-turn score in the low 32 bits
+    private static final long[] SCORES = new long[1 << (2 * WINDOW)];
+
+    static {
+        int[] cells = new int[WINDOW];
+        for (int code = 0; code < SCORES.length; code++) {
+            for (int i = 0; i < WINDOW; i++) {
+                cells[i] = (code >>> (2 * i)) & 3;
+            }
+            SCORES[code] = ((long) groupScore(cells, true) << 32) | groupScore(cells, false);
+        }
+    }
+
+    private LinePatterns() {
+    }
+
+    /**
+     * Scores the stones of one color on one line.
+     *
+     * @param matrix the board matrix (0: empty, 1: white, 2: black)
+     * @param row    the row of the first cell of the line
+     * @param col    the column of the first cell of the line
+     * @param dRow   the row step along the line
+     * @param dCol   the column step along the line
+     * @param length the number of cells on the line
+     * @param color  1 for white, 2 for black
+     * @return both scores, packed; read them with {@link #ownTurn(long)} and {@link #otherTurn(long)}
+     */
+    public static long scoreLine(int[][] matrix, int row, int col, int dRow, int dCol, int length, int color) {
+        int[] states = color == 2 ? BLACK_STATES : WHITE_STATES;
+        // The newest cell enters at the top of the code; the window's first stone is BEFORE cells from the bottom
+        int code = EDGE_CODE;
+        long sum = 0;
+        for (int c = 0; c < length; c++, row += dRow, col += dCol) {
+            code = (code >>> 2) | (states[matrix[row][col]] << TOP_SHIFT);
+            sum += SCORES[code];
+        }
+        // Shift in the blocked cells past the end, so that the groups near the end are scored too
+        for (int c = BEFORE; c < WINDOW; c++) {
+            code = (code >>> 2) | (BLOCKED << TOP_SHIFT);
+            sum += SCORES[code];
+        }
+        return sum;
+    }
+
+    // Returns the score of a line when its color is to move
+    public static int ownTurn(long scores) {
+        return (int) (scores >>> 32);
+    }
+
+    // Returns the score of a line when the other color is to move
+    public static int otherTurn(long scores) {
+        return (int) scores;
+    }
+
+    // Works out the score of the group starting at the window's first stone, or 0 if no group starts there
+    private static int groupScore(int[] cells, boolean currentTurn) {
+        int first = BEFORE;
+        if (cells[first] == OWN && cells[first - 1] != OWN && isSolidFive(cells, first)) {
+            return Minimax.getConsecutiveSetScore(5, 0, currentTurn); // Five, whatever group the run is part of
+        }
+        if (cells[first] != OWN || cells[first - 1] == OWN || (cells[first - 1] == EMPTY && cells[first - 2] == OWN)) {
+            return 0; // Not the first stone of a group
+        }
+        int stones = 0;
+        int gaps = 0;
+        int last = first;
+        for (int i = first; i < first + SPAN; i++) {
+            if (cells[i] == OWN) {
+                stones++;
+                last = i;
+            } else if (cells[i] == EMPTY && i + 1 < first + SPAN && cells[i + 1] == OWN) {
+                gaps++;
+            } else {
+                break;
+            }
+        }
+        int blocks = (cells[first - 1] == EMPTY ? 0 : 1) + (cells[last + 1] == EMPTY ? 0 : 1);
+        if (gaps == 0) {
+            return Minimax.getConsecutiveSetScore(stones, blocks, currentTurn);
+        }
+        if (stones >= 4) {
+            return Minimax.getConsecutiveSetScore(4, 1, currentTurn); // Only the gap completes five
+        }
+        // Every gap beyond the first is one more move to make, so it counts like a block
+        return Minimax.getConsecutiveSetScore(stones, Math.min(2, blocks + gaps - 1), currentTurn);
+    }
+
+    // Returns true if the 5 cells from the given one on are all own stones
+    private static boolean isSolidFive(int[] cells, int from) {
+        for (int i = from; i < from + 5; i++) {
+            if (cells[i] != OWN) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
@@ -1,47 +1,644 @@
 import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
+/**
+ * Monte Carlo tree search. With more than one thread the search is tree-parallel: every thread runs
+ * select-expand-playout-backpropagate on the same tree, using its own playout buffers, and virtual losses keep the
+ * threads from all descending into the same branch.
+ * <p>
+ * The tree is kept in a {@link NodePool} outside the heap, whose size is set by a memory limit. Nodes only store
+ * their move, so each thread keeps one board matrix of the root position and plays the moves of the path on it as it
+ * walks down, taking them back after the playout. When the pool is full, the search goes on without adding nodes.
+ * <p>
+ * The tree only grows into moves near the stones. The candidates of a node are the empty cells within two cells of a
+ * stone, ranked by the threats they make or stop and by their neighbors, and a node gets them one at a time, in rank
+ * order, as its visits grow (progressive widening). Children are chosen by UCT. With {@link #setRave(boolean)}, UCT
+ * is blended with the children's all-moves-as-first (AMAF) statistics (RAVE): a playout also counts for the children
+ * whose move the same player made later in it, which gives new children a value long before their own visits do. It
+ * is off by default: at equal playouts it plays no better here, and the bookkeeping slows the playouts down.
+ * <p>
+ * The tree is kept from one move to the next: the next search starts from the node of the position the opponent's
+ * reply led to, with the playouts already made below it. The rest of the old tree is dropped, and if the kept subtree
+ * fills more than half the pool, its least visited nodes too.
+ */
 public class MCTS {
-    private static final int SIMULATIONS = 1000;
+    private static final int DEFAULT_SIMULATIONS = 1000;
+    private static final long DEFAULT_MEMORY_BYTES = 64L << 20;
+    private static final double EXPLORATION = 1.0 / Math.sqrt(2);
+    private static final double EPSILON = 1e-6;
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    // Progressive widening: a node with n visits may have 1 + WIDENING_SCALE * n^WIDENING_EXPONENT children
+    private static final double WIDENING_SCALE = 1.5;
+    private static final double WIDENING_EXPONENT = 0.4;
+
+    // RAVE: the weight of the AMAF value is sqrt(RAVE_EQUIVALENCE / (3 * visits + RAVE_EQUIVALENCE)), so it fades as
+    // the visits of the child grow
+    private static final double RAVE_EQUIVALENCE = 300;
+    // Only the tree moves and this many playout moves count for AMAF; on a board this size random playouts fill most
+    // of it, and which player lands on a cell late in a playout says little about the cell
+    private static final int AMAF_PLAYOUT_MOVES = 20;
+
+    // Candidates are the empty cells within this distance of a stone
+    private static final int CANDIDATE_RADIUS = 2;
+
     private final Board board;
     private final int player;
-    private final Random random = new Random();
+    private int simulations = DEFAULT_SIMULATIONS;
+    private int threads = 1;
+    private boolean verbose = true;
+    private ExecutorService helperPool;
+
+    // The tree, created on first use
+    private long memoryBytes = DEFAULT_MEMORY_BYTES;
+    private NodePool pool;
+    private boolean widening = true;
+    private boolean rave;
+
+    // Tree reuse: the node of the move played last, below which the next search looks for its root, and the hash of
+    // the board after that move
+    private boolean reuseTree = true;
+    private int played = NodePool.NONE;
+    private long playedHash;
+    private int retainedVisits;
+
+    // Throughput of the last makeMove
+    private long playouts;
+    private long searchNanos;
 
     public MCTS(Board board, int player) {
         this.board = board;
         this.player = player;
     }
 
+    // Sets the number of playouts per move
+    public void setSimulations(int simulations) {
+        if (simulations < 1) {
+            throw new IllegalArgumentException("The number of simulations must be at least 1: " + simulations);
+        }
+        this.simulations = simulations;
+    }
+
+    /**
+     * Sets the memory the tree may use, outside the heap. The tree is dropped and created again at the new size on
+     * the next call to makeMove.
+     *
+     * @param memoryBytes the size of the node pool in bytes, at least one node
+     */
+    public void setMemoryLimit(long memoryBytes) {
+        if (memoryBytes < NodePool.BYTES_PER_NODE) {
+            throw new IllegalArgumentException("The memory limit must hold at least one node: " + memoryBytes);
+        }
+        this.memoryBytes = memoryBytes;
+        pool = null;
+        played = NodePool.NONE;
+    }
+
+    // Sets whether each search starts from the subtree of the previous one; when off, every search starts afresh
+    public void setReuseTree(boolean reuseTree) {
+        this.reuseTree = reuseTree;
+        if (!reuseTree) {
+            played = NodePool.NONE;
+        }
+    }
+
+    // Sets whether nodes get their candidate moves one at a time as their visits grow; when off, a node gets all
+    // of them, in rank order, before its children are chosen by UCT
+    public void setProgressiveWidening(boolean widening) {
+        this.widening = widening;
+    }
+
+    // Sets whether children are chosen with their AMAF statistics blended in; when off, by plain UCT
+    public void setRave(boolean rave) {
+        this.rave = rave;
+    }
+
+    // Sets whether makeMove prints its statistics
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    /**
+     * Sets the number of threads that search the tree together. The helper threads are started on the next call to
+     * makeMove.
+     *
+     * @param threads the number of threads, at least 1
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("The number of threads must be at least 1: " + threads);
+        }
+        if (threads != this.threads) {
+            shutdown();
+            this.threads = threads;
+        }
+    }
+
+    // Stops the helper threads; a later makeMove starts them again
+    public void shutdown() {
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+            helperPool = null;
+        }
+    }
+
     public void makeMove() {
-        Node root = new Node(board, player);
-        for (int i = 0; i < SIMULATIONS; i++) {
-            Node v = treePolicy(root);
-            int reward = defaultPolicy(v.getState());
-            v.backPropagate(reward);
+        int size = board.getBoardSize();
+        if (pool == null) {
+            pool = new NodePool(memoryBytes);
+        }
+        int reused = reusableRoot();
+        retainedVisits = reused == NodePool.NONE ? 0 : pool.getVisits(reused);
+        int root = reused != NodePool.NONE ? reused : pool.newRoot();
+        int rootStones = board.getBitBoard().getStoneCount();
+        AtomicInteger remaining = new AtomicInteger(simulations);
+        AtomicLong completed = new AtomicLong();
+        Runnable search = () -> {
+            Playout playout = new Playout(size);
+            Candidates candidates = new Candidates(size);
+            int[][] matrix = new int[size][];
+            for (int row = 0; row < size; row++) {
+                matrix[row] = board.getBoardMatrix()[row].clone();
+            }
+            int[] path = new int[size * size];
+            long count = 0;
+            while (remaining.getAndDecrement() > 0) {
+                search(root, rootStones, matrix, path, playout, candidates);
+                count++;
+            }
+            completed.addAndGet(count);
+        };
+        long start = System.nanoTime();
+        List<Future<?>> helpers = new ArrayList<>();
+        if (threads > 1) {
+            if (helperPool == null) {
+                helperPool = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                    Thread thread = new Thread(runnable, "mcts-helper");
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+            for (int i = 1; i < threads; i++) {
+                helpers.add(helperPool.submit(search));
+            }
+        }
+        search.run();
+        for (Future<?> helper : helpers) {
+            try {
+                helper.get();
+            } catch (Exception e) {
+                throw new IllegalStateException("MCTS helper thread failed", e);
+            }
+        }
+        searchNanos = System.nanoTime() - start;
+        playouts = completed.get();
+        int bestChild = mostVisited(root);
+        if (bestChild == NodePool.NONE) {
+            throw new IllegalStateException("No move to play");
+        }
+        int move = pool.getMove(bestChild);
+        board.addPieceNoGUI(move % size, move / size, player == 2);
+        played = reuseTree ? bestChild : NodePool.NONE;
+        playedHash = board.getHash();
+        if (verbose) {
+            System.out.println("Playouts: " + playouts + " Playouts per second: " + (long) getPlayoutsPerSecond()
+                    + " Threads: " + threads + " Reused visits: " + retainedVisits + " Tree nodes: " + pool.size());
+        }
+    }
+
+    // Returns the node of the board's position among the replies to the move played last, made the root of the
+    // pool so that the rest of the old tree is freed; NONE if the position was not searched
+    private int reusableRoot() {
+        int previous = played;
+        played = NodePool.NONE;
+        if (previous == NodePool.NONE) {
+            return NodePool.NONE;
+        }
+        int size = board.getBoardSize();
+        for (int child = pool.getFirstChild(previous); child != NodePool.NONE; child = pool.getNextSibling(child)) {
+            int move = pool.getMove(child);
+            // The board is the one after the move played, plus an opponent's stone on the child's cell
+            if (board.getBoardMatrix()[move / size][move % size] == 3 - player
+                    && board.getHash() == (playedHash ^ Zobrist.key(move % size, move / size, player != 2))) {
+                return pool.reroot(child, pool.capacity() / 2);
+            }
+        }
+        return NodePool.NONE;
+    }
+
+    // Returns the playouts below the root that the last makeMove took over from the search before it
+    public int getRetainedVisits() {
+        return retainedVisits;
+    }
+
+    // Returns the number of nodes in the tree
+    public int getTreeSize() {
+        return pool == null ? 0 : pool.size();
+    }
+
+    // Returns the number of playouts of the last makeMove
+    public long getPlayouts() {
+        return playouts;
+    }
+
+    // Returns the search throughput of the last makeMove, over all threads
+    public double getPlayoutsPerSecond() {
+        return searchNanos == 0 ? 0 : playouts * 1e9 / searchNanos;
+    }
+
+    // Runs one select-expand-playout-backpropagate pass. The moves of the path are played on the thread's matrix of
+    // the root position and taken back at the end; every node on the path carries a virtual loss until then.
+    private void search(int root, int rootStones, int[][] matrix, int[] path, Playout playout, Candidates candidates) {
+        int size = matrix.length;
+        int node = root;
+        int toMove = player;
+        int depth = 0;
+        pool.addVirtualLoss(node);
+        while (!pool.hasFlag(node, NodePool.TERMINAL)) {
+            int next = NodePool.NONE;
+            if (!pool.hasFlag(node, NodePool.FULLY_EXPANDED) && pool.getCursor(node) < allowedChildren(node)) {
+                next = expand(node, matrix, toMove, rootStones + depth, candidates);
+            }
+            boolean expanded = next != NodePool.NONE;
+            if (!expanded) {
+                // Widened as far as the visits allow, fully expanded, expanded by another thread, or the pool is
+                // full: choose among the children
+                next = select(node, EXPLORATION);
+                if (next == NodePool.NONE) {
+                    break;
+                }
+            }
+            int move = pool.getMove(next);
+            matrix[move / size][move % size] = toMove;
+            path[depth++] = move;
+            toMove = 3 - toMove;
+            node = next;
+            pool.addVirtualLoss(node);
+            if (expanded) {
+                break;
+            }
+        }
+        boolean terminal = pool.hasFlag(node, NodePool.TERMINAL);
+        int winner = terminal ? pool.getWinner(node) : playout.run(matrix, toMove);
+        // For the AMAF statistics, add the first playout moves to the tree moves: the matrix then shows who played
+        // each cell that counts
+        int amafMoves = rave && !terminal ? Math.min(AMAF_PLAYOUT_MOVES, playout.getMoveCount()) : 0;
+        for (int i = 0; i < amafMoves; i++) {
+            int cell = playout.getMove(i);
+            matrix[cell / size][cell % size] = i % 2 == 0 ? toMove : 3 - toMove;
+        }
+        // Each node counts the result for the player who made the move leading to it
+        int mover = 3 - toMove;
+        for (int n = node; n != NodePool.NONE; n = pool.getParent(n)) {
+            pool.update(n, winner == mover ? 1 : winner == 0 ? 0 : -1);
+            if (rave) {
+                // The children of n are moves of the other player, the one to move in n
+                int childMover = 3 - mover;
+                int result = winner == childMover ? 1 : winner == 0 ? 0 : -1;
+                for (int c = pool.getFirstChild(n); c != NodePool.NONE; c = pool.getNextSibling(c)) {
+                    int move = pool.getMove(c);
+                    if (matrix[move / size][move % size] == childMover) {
+                        pool.updateAmaf(c, result);
+                    }
+                }
+            }
+            mover = 3 - mover;
         }
-        Node bestChild = root.bestChild(0);
-        board.getBoardMatrix()[bestChild.getAction()[0]][bestChild.getAction()[1]] = player;
+        for (int i = 0; i < amafMoves; i++) {
+            matrix[playout.getMove(i) / size][playout.getMove(i) % size] = 0;
+        }
+        for (int i = 0; i < depth; i++) {
+            matrix[path[i] / size][path[i] % size] = 0;
+        }
+    }
+
+    // Returns how many children a node may have at its visits
+    private int allowedChildren(int node) {
+        if (!widening) {
+            return Integer.MAX_VALUE;
+        }
+        return 1 + (int) (WIDENING_SCALE * Math.pow(pool.getVisits(node), WIDENING_EXPONENT));
+    }
+
+    // Adds a child for the node's best ranked untried candidate; returns NONE if there is none left, the node has as
+    // many children as its visits allow, or the pool is full
+    private int expand(int node, int[][] matrix, int toMove, int stones, Candidates candidates) {
+        int size = matrix.length;
+        // Ranking reads only this thread's matrix, so it runs outside the lock. A position always ranks its candidates
+        // the same way, so the ranking still holds if other threads add children in the meantime.
+        int count = candidates.rank(node, matrix, toMove, pool.getCursor(node));
+        synchronized (pool.lockOf(node)) {
+            int cursor = pool.getCursor(node);
+            if (pool.hasFlag(node, NodePool.FULLY_EXPANDED) || cursor >= allowedChildren(node)) {
+                return NodePool.NONE;
+            }
+            boolean pruned = pool.hasFlag(node, NodePool.PRUNED);
+            for (; cursor < count; cursor++) {
+                int cell = candidates.get(cursor);
+                if (pruned && hasChild(node, cell)) {
+                    continue;
+                }
+                int row = cell / size;
+                int col = cell % size;
+                int flags = 0;
+                matrix[row][col] = toMove;
+                if (isFiveAt(matrix, row, col, toMove)) {
+                    flags = NodePool.winnerFlags(toMove);
+                } else if (stones + 1 == size * size) {
+                    flags = NodePool.winnerFlags(0);
+                }
+                matrix[row][col] = 0;
+                int child = pool.addChild(node, cell, flags);
+                if (child == NodePool.NONE) {
+                    return NodePool.NONE;
+                }
+                pool.setCursor(node, cursor + 1);
+                if (cursor + 1 == count) {
+                    pool.setFlag(node, NodePool.FULLY_EXPANDED);
+                }
+                return child;
+            }
+            pool.setCursor(node, count);
+            pool.setFlag(node, NodePool.FULLY_EXPANDED);
+            return NodePool.NONE;
+        }
+    }
+
+    private boolean hasChild(int node, int move) {
+        for (int child = pool.getFirstChild(node); child != NodePool.NONE; child = pool.getNextSibling(child)) {
+            if (pool.getMove(child) == move) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Returns the child to play: the one with the most visits, and among those the best mean result. A child added
+    // late by widening can have a high mean from a handful of playouts, so the mean alone is not trusted.
+    private int mostVisited(int node) {
+        int best = NodePool.NONE;
+        int bestVisits = -1;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        for (int child = pool.getFirstChild(node); child != NodePool.NONE; child = pool.getNextSibling(child)) {
+            int visits = pool.getVisits(child);
+            double value = visits == 0 ? 0 : (double) pool.getWins(child) / visits;
+            if (visits > bestVisits || (visits == bestVisits && value > bestValue)) {
+                best = child;
+                bestVisits = visits;
+                bestValue = value;
+            }
+        }
+        return best;
+    }
+
+    // Returns the child with the best UCT value, blended with its AMAF value if RAVE is on, or NONE if the node has
+    // no children. The virtual losses of running playouts count as lost visits.
+    private int select(int node, double c) {
+        int best = NodePool.NONE;
+        double bestValue = Double.NEGATIVE_INFINITY;
+        double logVisits = Math.log(pool.getVisits(node) + pool.getVirtualLoss(node) + 1);
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        for (int child = pool.getFirstChild(node); child != NodePool.NONE; child = pool.getNextSibling(child)) {
+            int pending = pool.getVirtualLoss(child);
+            double childVisits = pool.getVisits(child) + pending + EPSILON;
+            double value = (pool.getWins(child) - pending) / childVisits;
+            int amafVisits = pool.getAmafVisits(child);
+            if (rave && amafVisits > 0) {
+                double beta = Math.sqrt(RAVE_EQUIVALENCE / (3 * childVisits + RAVE_EQUIVALENCE));
+                value = (1 - beta) * value + beta * pool.getAmafWins(child) / amafVisits;
+            }
+            double uctValue = value + c * Math.sqrt(logVisits / childVisits) + random.nextDouble() * EPSILON;
+            if (uctValue > bestValue) {
+                best = child;
+                bestValue = uctValue;
+            }
+        }
+        return best;
     }
 
-    private Node treePolicy(Node v) {
-        while (!v.getState().isTerminal()) {
-            if (!v.isFullyExpanded()) {
-                return v.expand();
-            } else {
-                v = v.bestChild(1.0 / Math.sqrt(2));
+    // Checks whether the stone just played at (row, col) completes five in a row
+    static boolean isFiveAt(int[][] matrix, int row, int col, int color) {
+        int size = matrix.length;
+        for (int[] dir : DIRECTIONS) {
+            int count = 1;
+            for (int sign = -1; sign <= 1; sign += 2) {
+                int r = row + sign * dir[0];
+                int c = col + sign * dir[1];
+                while (r >= 0 && r < size && c >= 0 && c < size && matrix[r][c] == color) {
+                    count++;
+                    r += sign * dir[0];
+                    c += sign * dir[1];
+                }
+            }
+            if (count >= 5) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * The playout buffers of one search thread, reused by every playout of the thread so that playouts do not
+     * allocate. Package-private so that the benchmarks can time playouts on their own.
+     */
+    static final class Playout {
+        private final int[][] matrix;
+        private final int[] emptyCells;
+        private final int[] moves; // The moves of the last playout, in order
+        private int moveCount;
+        private final SplittableRandom random = new SplittableRandom();
+
+        Playout(int boardSize) {
+            matrix = new int[boardSize][boardSize];
+            emptyCells = new int[boardSize * boardSize];
+            moves = new int[boardSize * boardSize];
+        }
+
+        // Returns the number of moves of the last playout
+        int getMoveCount() {
+            return moveCount;
+        }
+
+        // Returns a move of the last playout, as row * boardSize + column; the first is made by the player given to run
+        int getMove(int index) {
+            return moves[index];
+        }
+
+        // Plays random moves from a position until the game ends; returns the winner (0 for a draw)
+        int run(int[][] position, int player) {
+            int size = position.length;
+            int emptyCount = 0;
+            moveCount = 0;
+            for (int i = 0; i < size; i++) {
+                System.arraycopy(position[i], 0, matrix[i], 0, size);
+                for (int j = 0; j < size; j++) {
+                    if (position[i][j] == 0) {
+                        emptyCells[emptyCount++] = i * size + j;
+                    }
+                }
+            }
+            while (emptyCount > 0) {
+                int index = random.nextInt(emptyCount);
+                int cell = emptyCells[index];
+                emptyCells[index] = emptyCells[--emptyCount];
+                moves[moveCount++] = cell;
+                int row = cell / size;
+                int col = cell % size;
+                matrix[row][col] = player;
+                if (isFiveAt(matrix, row, col, player)) {
+                    return player;
+                }
+                player = 3 - player; // switch player
             }
+            return 0;
         }
-        return v;
     }
 
-    private int defaultPolicy(Board state) {
-        Board tempState = new Board(state);
-        int player = this.player;
-        while (!tempState.isTerminal()) {
-            List<int[]> possibleMoves = tempState.getPossibleMoves();
-            int[] action = possibleMoves.get(random.nextInt(possibleMoves.size()));
-            tempState.getBoardMatrix()[action[0]][action[1]] = player;
-            player = 3 - player; // switch player
+    /**
+     * The candidate moves of a position, ranked, in buffers reused by one search thread. Candidates are the empty
+     * cells near a stone. A cell where the side to move makes a threat ranks above one where it stops the same
+     * threat of the opponent, and both above weaker threats; cells with the same threats rank by the stones around
+     * them, then by cell, so that a position always ranks its candidates the same way.
+     * <p>
+     * Widening adds a node's children one at a time, so a node is expanded many times. The first few candidates of
+     * the nodes ranked last are remembered, so that most expansions do not rank the board again. The cache is keyed
+     * by node, which is safe because a node keeps its index for the whole search and a thread's Candidates live only
+     * as long as one search.
+     */
+    static final class Candidates {
+        private static final int CELL_BITS = 10; // Cells fit in 10 bits on boards up to 32 x 32
+        private static final int CACHED = 8; // Candidates remembered per node
+        private static final int CACHE_SIZE = 4096; // Nodes remembered, by index modulo CACHE_SIZE
+
+        private final int[] keys;
+        private final int[] stoneSums; // Summed-area table of the stones, (boardSize + 1)^2
+        private int count;
+        // The position ranked last: whether keys holds its full ranking, or else its cache slot
+        private int[][] matrix;
+        private int color;
+        private boolean ranked;
+        private int slot;
+
+        private final int[] cacheNodes = new int[CACHE_SIZE]; // Node + 1, or 0 for an empty slot
+        private final int[] cacheCounts = new int[CACHE_SIZE];
+        private final int[] cacheCells = new int[CACHE_SIZE * CACHED];
+
+        Candidates(int boardSize) {
+            keys = new int[boardSize * boardSize];
+            stoneSums = new int[(boardSize + 1) * (boardSize + 1)];
+        }
+
+        /**
+         * Ranks the candidates of a node's position, or finds them in the cache. If no empty cell is near a stone, as
+         * on an empty board, every empty cell is a candidate.
+         *
+         * @param node   the node, whose position the matrix holds
+         * @param matrix the position
+         * @param color  the side to move
+         * @param from   the first rank the caller expects to need
+         * @return the number of candidates
+         */
+        int rank(int node, int[][] matrix, int color, int from) {
+            this.matrix = matrix;
+            this.color = color;
+            slot = node & (CACHE_SIZE - 1);
+            if (cacheNodes[slot] == node + 1 && from < Math.min(cacheCounts[slot], CACHED)) {
+                ranked = false;
+                return cacheCounts[slot];
+            }
+            rankAll();
+            cacheNodes[slot] = node + 1;
+            cacheCounts[slot] = count;
+            for (int i = 0; i < Math.min(count, CACHED); i++) {
+                cacheCells[slot * CACHED + i] = decode(keys[i]);
+            }
+            return count;
+        }
+
+        // Returns the candidate of a rank, as row * boardSize + column; ranks beyond the cached ones rank the board
+        int get(int rank) {
+            if (!ranked) {
+                if (rank < CACHED) {
+                    return cacheCells[slot * CACHED + rank];
+                }
+                rankAll();
+            }
+            return decode(keys[rank]);
+        }
+
+        private void rankAll() {
+            int size = matrix.length;
+            countStones();
+            count = 0;
+            for (int row = 0; row < size; row++) {
+                for (int col = 0; col < size; col++) {
+                    if (matrix[row][col] == 0) {
+                        int neighbors = neighbors(size, row, col);
+                        if (neighbors > 0) {
+                            int own = Threats.threatAt(matrix, row, col, color);
+                            int opponent = Threats.threatAt(matrix, row, col, 3 - color);
+                            int tier = Math.max(2 * own, 2 * opponent - 1);
+                            add(tier * 32 + neighbors, row * size + col);
+                        }
+                    }
+                }
+            }
+            if (count == 0) {
+                for (int row = 0; row < size; row++) {
+                    for (int col = 0; col < size; col++) {
+                        if (matrix[row][col] == 0) {
+                            add(0, row * size + col);
+                        }
+                    }
+                }
+            }
+            // Highest key first: the score is in the high bits, the cell inverted in the low bits
+            Arrays.sort(keys, 0, count);
+            for (int i = 0, j = count - 1; i < j; i++, j--) {
+                int key = keys[i];
+                keys[i] = keys[j];
+                keys[j] = key;
+            }
+            ranked = true;
+        }
+
+        private void add(int score, int cell) {
+            keys[count++] = score << CELL_BITS | ((1 << CELL_BITS) - 1 - cell);
+        }
+
+        private static int decode(int key) {
+            return (1 << CELL_BITS) - 1 - (key & ((1 << CELL_BITS) - 1));
+        }
+
+        // Fills stoneSums: entry (r, c) counts the stones in the rows above r and the columns left of c
+        private void countStones() {
+            int size = matrix.length;
+            int width = size + 1;
+            for (int row = 0; row < size; row++) {
+                int rowStones = 0;
+                for (int col = 0; col < size; col++) {
+                    if (matrix[row][col] != 0) {
+                        rowStones++;
+                    }
+                    stoneSums[(row + 1) * width + col + 1] = stoneSums[row * width + col + 1] + rowStones;
+                }
+            }
+        }
+
+        // Counts the stones within CANDIDATE_RADIUS of a cell, from the summed-area table
+        private int neighbors(int size, int row, int col) {
+            int width = size + 1;
+            int top = Math.max(0, row - CANDIDATE_RADIUS);
+            int left = Math.max(0, col - CANDIDATE_RADIUS);
+            int bottom = Math.min(size, row + CANDIDATE_RADIUS + 1);
+            int right = Math.min(size, col + CANDIDATE_RADIUS + 1);
+            return stoneSums[bottom * width + right] - stoneSums[top * width + right]
+                    - stoneSums[bottom * width + left] + stoneSums[top * width + left];
         }
-        return state.getReward(this.player);
     }
 }
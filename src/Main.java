@@ -8,14 +8,16 @@ public class Main {
         final int width = 760;
         final MainGUI gui = new MainGUI(width,width, "Gomoku");
 
-        // Create a 19x19 game board.
-        Board board = new Board(width, 19);
+        // Create a 19x19 game board and the view that draws it.
+        Board board = new Board(19);
+        BoardGUI boardGUI = new BoardGUI(width, 19);
+        board.addListener(boardGUI);
 
         // Create the game manager instance and pass the game board to it.
-        final Game game = new Game(board);
+        final Game game = new Game(board, boardGUI);
 
         // Attach the game board's GUI component to the main frame.
-        gui.attachBoard(board.getGUI());
+        gui.attachBoard(boardGUI);
 
         // Pack and display the GUI.
         gui.pack();
@@ -28,16 +30,16 @@ public class Main {
 
                 // Get the settings from the main GUI manager.
                 Object[] settings = gui.fetchSettings();
-                int depth = (Integer)(settings[0]);
+                long moveTime = (Long)(settings[0]);
                 boolean computerStarts = (Boolean)(settings[1]);
 
-                System.out.println("Depth: " + depth + " Computer starts: " + computerStarts );
+                System.out.println("Time per move: " + moveTime + " ms Computer starts: " + computerStarts );
 
                 // Show the game board to the user.
                 gui.showBoard();
 
                 // Set the game settings and start the game.
-                game.setAIDepth(depth);
+                game.setAIMoveTime(moveTime);
                 game.setAIStarts(computerStarts);
                 game.start();
             }
@@ -10,7 +10,7 @@ import javax.swing.JRadioButton;
 
 public class MainGUI extends JFrame {
     private static final long serialVersionUID = 1L;
-    private int setLevel;
+    private long moveTime;
     private boolean computerStarts;
 
     private JPanel boardPanel;
@@ -86,13 +86,13 @@ public class MainGUI extends JFrame {
      */
     public Object[] fetchSettings() {
         if (hardDifficultyRadioButton.isSelected()) {
-            setLevel = 4;
+            moveTime = 5000;
         } else {
-            setLevel = 1;
+            moveTime = 1000;
         }
 
         computerStarts = computerPlayerRadioButton.isSelected();
-        Object[] settings = {setLevel, computerStarts};
+        Object[] settings = {moveTime, computerStarts};
         return settings;
     }
 
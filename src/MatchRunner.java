@@ -0,0 +1,467 @@
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.Set;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Function;
+
+/**
+ * Plays two engines against each other without a GUI, to check that an engine change improves strength and speed.
+ * <p>
+ * Usage: {@code java MatchRunner [--games N] [--threads T] [--size S] [--opening K] [--seed X] ENGINE_A ENGINE_B},
+ * where an engine is one of
+ * <ul>
+ *     <li>{@code minimax[:depth=D|time=MS|nodes=N][,radius=R][,threads=T]} (default depth 2),</li>
+ *     <li>{@code mcts[:playouts=P][,threads=T][,reuse=true|false][,memory=MB][,rave=true|false]
+ *     [,widening=true|false]} (by default the tree is kept between moves, in 64 MB, with progressive widening and
+ *     without RAVE),</li>
+ *     <li>{@code simple}.</li>
+ * </ul>
+ * Games are played in pairs from the same random opening of K stones, with the engines swapping colors, so neither
+ * engine profits from a lucky opening. The games run on a pool of T threads, each game with its own boards and engine
+ * instances. At the end the runner prints the score, games per second, the nodes per second and move latency
+ * percentiles of each engine, and the Elo difference of engine A with a 95% confidence interval.
+ */
+public class MatchRunner {
+    private static final int TABLE_BITS = 16; // Transposition table of each Minimax engine: 2^16 entries
+    private static final int OPENING_RADIUS = 2; // Opening stones are placed within this distance of the center
+    private static final double Z_95 = 1.96;
+
+    private final List<Function<Board, Engine>> engines;
+    private final String[] names;
+    private final int boardSize;
+    private final int openingStones;
+    private final long seed;
+
+    public MatchRunner(String engineA, String engineB, int boardSize, int openingStones, long seed) {
+        this.engines = List.of(parseEngine(engineA), parseEngine(engineB));
+        this.names = new String[]{engineA, engineB};
+        this.boardSize = boardSize;
+        this.openingStones = openingStones;
+        this.seed = seed;
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        int games = 100;
+        int threads = Runtime.getRuntime().availableProcessors();
+        int size = 19;
+        int opening = 3;
+        long seed = 1;
+        List<String> engineSpecs = new ArrayList<>();
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--games":
+                    games = Integer.parseInt(args[++i]);
+                    break;
+                case "--threads":
+                    threads = Integer.parseInt(args[++i]);
+                    break;
+                case "--size":
+                    size = Integer.parseInt(args[++i]);
+                    break;
+                case "--opening":
+                    opening = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    engineSpecs.add(args[i]);
+            }
+        }
+        if (engineSpecs.size() != 2) {
+            System.out.println("Usage: java MatchRunner [--games N] [--threads T] [--size S] [--opening K] [--seed X]"
+                    + " ENGINE_A ENGINE_B");
+            System.out.println("Engines: minimax[:depth=D|time=MS|nodes=N][,radius=R][,threads=T],"
+                    + " mcts[:playouts=P][,threads=T][,reuse=true|false][,memory=MB][,rave=true|false]"
+                    + "[,widening=true|false], simple");
+            return;
+        }
+        MatchRunner runner = new MatchRunner(engineSpecs.get(0), engineSpecs.get(1), size, opening, seed);
+        runner.run(games, threads);
+    }
+
+    /**
+     * Plays the match and prints the report.
+     *
+     * @param games   the number of games
+     * @param threads the number of games played at the same time
+     */
+    public void run(int games, int threads) throws InterruptedException {
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        List<Future<GameResult>> results = new ArrayList<>();
+        long start = System.nanoTime();
+        for (int game = 0; game < games; game++) {
+            int pair = game / 2;
+            boolean aPlaysBlack = game % 2 == 0;
+            results.add(pool.submit(() -> playGame(pair, aPlaysBlack)));
+        }
+        int[] wins = new int[2];
+        int draws = 0;
+        EngineStats[] stats = {new EngineStats(), new EngineStats()};
+        for (Future<GameResult> future : results) {
+            GameResult result;
+            try {
+                result = future.get();
+            } catch (ExecutionException e) {
+                pool.shutdownNow();
+                throw new IllegalStateException("A game failed", e.getCause());
+            }
+            if (result.winner < 0) {
+                draws++;
+            } else {
+                wins[result.winner]++;
+            }
+            for (int e = 0; e < 2; e++) {
+                stats[e].add(result.stats[e]);
+            }
+            if (result.forfeit >= 0) {
+                stats[result.forfeit].forfeits++;
+            }
+        }
+        double seconds = (System.nanoTime() - start) / 1e9;
+        pool.shutdown();
+        report(games, wins, draws, stats, seconds);
+    }
+
+    private void report(int games, int[] wins, int draws, EngineStats[] stats, double seconds) {
+        System.out.println("Games: " + games + " A wins: " + wins[0] + " B wins: " + wins[1] + " Draws: " + draws);
+        System.out.println(String.format("Time: %.1f s Games per second: %.2f", seconds, games / seconds));
+        for (int e = 0; e < 2; e++) {
+            EngineStats s = stats[e];
+            long[] latencies = Arrays.copyOf(s.latencies, s.moves);
+            Arrays.sort(latencies);
+            System.out.println(String.format("%s %s: moves %d, nodes per second %.0f, move latency ms p50 %.2f"
+                            + " p90 %.2f p99 %.2f max %.2f, forfeits %d",
+                    e == 0 ? "A" : "B", names[e], s.moves, s.nanos == 0 ? 0.0 : s.nodes * 1e9 / s.nanos,
+                    percentile(latencies, 50), percentile(latencies, 90), percentile(latencies, 99),
+                    percentile(latencies, 100), s.forfeits));
+        }
+        // Elo from the mean score of A, with the confidence interval of the mean
+        double score = (wins[0] + draws / 2.0) / games;
+        double variance = (wins[0] * Math.pow(1 - score, 2) + draws * Math.pow(0.5 - score, 2)
+                + wins[1] * Math.pow(score, 2)) / games;
+        double margin = Z_95 * Math.sqrt(variance / games);
+        System.out.println(String.format("Elo of A: %+.1f (95%% CI %+.1f .. %+.1f) Score: %.3f",
+                elo(score), elo(score - margin), elo(score + margin), score));
+    }
+
+    // Returns the Elo difference that gives the expected score
+    private static double elo(double score) {
+        if (score <= 0) {
+            return Double.NEGATIVE_INFINITY;
+        }
+        if (score >= 1) {
+            return Double.POSITIVE_INFINITY;
+        }
+        return -400 * Math.log10(1 / score - 1);
+    }
+
+    // Returns the nearest-rank percentile of sorted nanosecond values, in milliseconds
+    private static double percentile(long[] sorted, int percent) {
+        if (sorted.length == 0) {
+            return 0;
+        }
+        int rank = (int) Math.ceil(percent / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)] / 1e6;
+    }
+
+    // Plays one game; engine A plays black if aPlaysBlack. Black moves first.
+    private GameResult playGame(int pair, boolean aPlaysBlack) {
+        Board board = new Board(boardSize);
+        Board[] views = {new Board(boardSize), new Board(boardSize)};
+        boolean[] playsBlack = {aPlaysBlack, !aPlaysBlack};
+        Engine[] players = {engines.get(0).apply(views[0]), engines.get(1).apply(views[1])};
+        GameResult result = new GameResult();
+        try {
+            boolean blacksTurn = true;
+            for (int cell : opening(pair)) {
+                play(board, views, playsBlack, cell / boardSize, cell % boardSize, blacksTurn);
+                blacksTurn = !blacksTurn;
+            }
+            while (!board.isTerminal()) {
+                int mover = playsBlack[0] == blacksTurn ? 0 : 1;
+                long start = System.nanoTime();
+                int[] move = players[mover].selectMove();
+                result.stats[mover].addMove(System.nanoTime() - start, players[mover].getLastNodeCount());
+                if (move == null || move[0] < 0 || move[0] >= boardSize || move[1] < 0 || move[1] >= boardSize
+                        || board.getBoardMatrix()[move[0]][move[1]] != 0) {
+                    result.forfeit = mover;
+                    result.winner = 1 - mover;
+                    return result;
+                }
+                play(board, views, playsBlack, move[0], move[1], blacksTurn);
+                blacksTurn = !blacksTurn;
+            }
+            int winner = board.getWinner();
+            result.winner = winner == 0 ? -1 : (winner == 2) == playsBlack[0] ? 0 : 1;
+            return result;
+        } finally {
+            for (Engine player : players) {
+                player.close();
+            }
+        }
+    }
+
+    // Places a stone on the game board and on both engines' boards, where each engine plays white
+    private static void play(Board board, Board[] views, boolean[] playsBlack, int row, int col, boolean black) {
+        board.addPieceNoGUI(col, row, black);
+        for (int e = 0; e < 2; e++) {
+            views[e].addPieceNoGUI(col, row, black != playsBlack[e]);
+        }
+    }
+
+    // Returns the opening of a game pair: the center, then random cells near it
+    private int[] opening(int pair) {
+        Random random = new Random(seed * 1_000_003 + pair);
+        int center = boardSize / 2;
+        int[] cells = new int[Math.min(openingStones, (2 * OPENING_RADIUS + 1) * (2 * OPENING_RADIUS + 1))];
+        int count = 0;
+        while (count < cells.length) {
+            int row = count == 0 ? center : center + random.nextInt(2 * OPENING_RADIUS + 1) - OPENING_RADIUS;
+            int col = count == 0 ? center : center + random.nextInt(2 * OPENING_RADIUS + 1) - OPENING_RADIUS;
+            int cell = row * boardSize + col;
+            boolean taken = false;
+            for (int i = 0; i < count; i++) {
+                taken |= cells[i] == cell;
+            }
+            if (!taken) {
+                cells[count++] = cell;
+            }
+        }
+        return cells;
+    }
+
+    /**
+     * Parses an engine specification such as {@code minimax:depth=3,threads=2}.
+     *
+     * @param spec the engine and its options
+     * @return a factory creating the engine for a board
+     */
+    public static Function<Board, Engine> parseEngine(String spec) {
+        String[] parts = spec.split(":", 2);
+        Map<String, String> options = new HashMap<>();
+        if (parts.length > 1) {
+            for (String option : parts[1].split(",")) {
+                String[] keyValue = option.split("=", 2);
+                if (keyValue.length != 2) {
+                    throw new IllegalArgumentException("Bad engine option '" + option + "' in " + spec);
+                }
+                options.put(keyValue[0], keyValue[1]);
+            }
+        }
+        switch (parts[0]) {
+            case "minimax": {
+                checkOptions(spec, options, Set.of("depth", "time", "nodes", "radius", "threads"));
+                int depth = Integer.parseInt(options.getOrDefault("depth", "2"));
+                long time = Long.parseLong(options.getOrDefault("time", "0"));
+                long nodes = Long.parseLong(options.getOrDefault("nodes", "0"));
+                int radius = Integer.parseInt(options.getOrDefault("radius", "1"));
+                int threads = Integer.parseInt(options.getOrDefault("threads", "1"));
+                return board -> new MinimaxEngine(board, depth, time, nodes, radius, threads);
+            }
+            case "mcts": {
+                checkOptions(spec, options, Set.of("playouts", "threads", "reuse", "memory", "rave", "widening"));
+                int playouts = Integer.parseInt(options.getOrDefault("playouts", "1000"));
+                int threads = Integer.parseInt(options.getOrDefault("threads", "1"));
+                boolean reuse = Boolean.parseBoolean(options.getOrDefault("reuse", "true"));
+                long memory = Long.parseLong(options.getOrDefault("memory", "64")) << 20;
+                boolean rave = Boolean.parseBoolean(options.getOrDefault("rave", "false"));
+                boolean widening = Boolean.parseBoolean(options.getOrDefault("widening", "true"));
+                return board -> new MctsEngine(board, playouts, threads, reuse, memory, rave, widening);
+            }
+            case "simple":
+                checkOptions(spec, options, Set.of());
+                return SimpleEngine::new;
+            default:
+                throw new IllegalArgumentException("Unknown engine: " + spec);
+        }
+    }
+
+    private static void checkOptions(String spec, Map<String, String> options, Set<String> allowed) {
+        for (String key : options.keySet()) {
+            if (!allowed.contains(key)) {
+                throw new IllegalArgumentException("Unknown option '" + key + "' in " + spec);
+            }
+        }
+    }
+
+    // Returns the move an engine placed on a copy of the board, as {row, column}
+    private static int[] lastMove(Board board) {
+        int move = board.getLastMove();
+        return move < 0 ? null : new int[]{move / board.getBoardSize(), move % board.getBoardSize()};
+    }
+
+    private static final class MinimaxEngine implements Engine {
+        private final Minimax minimax;
+        private final int depth;
+        private final long time;
+        private final long nodes;
+
+        MinimaxEngine(Board board, int depth, long time, long nodes, int radius, int threads) {
+            minimax = new Minimax(board,
+                    new TranspositionTable(TABLE_BITS, TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED));
+            minimax.setVerbose(false);
+            minimax.setMoveRadius(radius);
+            minimax.setThreads(threads);
+            this.depth = depth;
+            this.time = time;
+            this.nodes = nodes;
+        }
+
+        @Override
+        public int[] selectMove() {
+            if (time > 0 || nodes > 0) {
+                return minimax.getNextMoveWithinBudget(time, nodes);
+            }
+            return minimax.getNextMove(depth);
+        }
+
+        @Override
+        public long getLastNodeCount() {
+            return minimax.getLastNodeCount();
+        }
+
+        @Override
+        public void close() {
+            minimax.shutdown();
+        }
+    }
+
+    // MCTS places its move on the board it searches, so it searches a copy. The copy and the MCTS are kept between
+    // moves, so that the tree can be reused: before each move the copy is brought up to date with the new stones.
+    private static final class MctsEngine implements Engine {
+        private final Board board;
+        private final int playouts;
+        private final int threads;
+        private final boolean reuse;
+        private final long memory;
+        private final boolean rave;
+        private final boolean widening;
+        private Board copy;
+        private MCTS mcts;
+        private long lastPlayouts;
+
+        MctsEngine(Board board, int playouts, int threads, boolean reuse, long memory, boolean rave,
+                   boolean widening) {
+            this.board = board;
+            this.playouts = playouts;
+            this.threads = threads;
+            this.reuse = reuse;
+            this.memory = memory;
+            this.rave = rave;
+            this.widening = widening;
+        }
+
+        @Override
+        public int[] selectMove() {
+            if (mcts == null || !catchUp()) {
+                close();
+                copy = new Board(board);
+                mcts = new MCTS(copy, 1);
+                mcts.setVerbose(false);
+                mcts.setSimulations(playouts);
+                mcts.setThreads(threads);
+                mcts.setReuseTree(reuse);
+                mcts.setMemoryLimit(memory);
+                mcts.setRave(rave);
+                mcts.setProgressiveWidening(widening);
+            }
+            mcts.makeMove();
+            lastPlayouts = mcts.getPlayouts();
+            return lastMove(copy);
+        }
+
+        // Adds the stones placed on the board since the last move to the copy; false if a stone of the copy is no
+        // longer on the board, and the copy has to be made again
+        private boolean catchUp() {
+            int[][] matrix = board.getBoardMatrix();
+            int[][] copyMatrix = copy.getBoardMatrix();
+            for (int row = 0; row < matrix.length; row++) {
+                for (int col = 0; col < matrix.length; col++) {
+                    if (copyMatrix[row][col] != 0 && copyMatrix[row][col] != matrix[row][col]) {
+                        return false;
+                    }
+                }
+            }
+            for (int row = 0; row < matrix.length; row++) {
+                for (int col = 0; col < matrix.length; col++) {
+                    if (copyMatrix[row][col] == 0 && matrix[row][col] != 0) {
+                        copy.addPieceNoGUI(col, row, matrix[row][col] == 2);
+                    }
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public long getLastNodeCount() {
+            return lastPlayouts;
+        }
+
+        @Override
+        public void close() {
+            if (mcts != null) {
+                mcts.shutdown();
+            }
+        }
+    }
+
+    // SimpleAI places its move on the board it is given, so it plays on a copy
+    private static final class SimpleEngine implements Engine {
+        private final Board board;
+
+        SimpleEngine(Board board) {
+            this.board = board;
+        }
+
+        @Override
+        public int[] selectMove() {
+            Board copy = new Board(board);
+            new SimpleAI(copy, 1).makeMove();
+            return lastMove(copy);
+        }
+
+        @Override
+        public long getLastNodeCount() {
+            return 0;
+        }
+    }
+
+    // Moves, nodes, thinking time and move latencies of one engine
+    private static final class EngineStats {
+        private int moves;
+        private long nodes;
+        private long nanos;
+        private long[] latencies = new long[64];
+        private int forfeits;
+
+        void addMove(long nanos, long nodes) {
+            if (moves == latencies.length) {
+                latencies = Arrays.copyOf(latencies, moves * 2);
+            }
+            latencies[moves++] = nanos;
+            this.nanos += nanos;
+            this.nodes += nodes;
+        }
+
+        void add(EngineStats other) {
+            for (int i = 0; i < other.moves; i++) {
+                addMove(other.latencies[i], 0);
+            }
+            nodes += other.nodes;
+        }
+    }
+
+    private static final class GameResult {
+        private int winner = -1; // 0: engine A, 1: engine B, -1: draw
+        private int forfeit = -1; // The engine that lost by an illegal move, or -1
+        private final EngineStats[] stats = {new EngineStats(), new EngineStats()};
+    }
+}
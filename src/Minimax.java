@@ -1,19 +1,251 @@
 import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
 
 public class Minimax {
 
-    // Static variable to keep count of evaluations made
-    public static int evaluationCount = 0;
-
     // Instance variable for Board
     private Board board;
 
+    // Transposition table shared by all searches of this instance, so positions reached again are not re-searched
+    private final TranspositionTable table;
+
     // Constant for the winning score
     private static final int WIN_SCORE = 100_000_000;
 
+    // Pattern scores of a four and an open three on their owner's turn: any total this high means the player has
+    // one, since all the smaller patterns on a board add up to far less
+    static final int FOUR_SCORE = 1_000_000;
+    static final int OPEN_THREE_SCORE = 50_000;
+
+    // Evaluations are log2 of white's to black's pattern score in fixed point, with LOG_FRACTION_BITS after the
+    // binary point; LOG_TABLE[m] is the fraction of log2(1 + m / 2^LOG_FRACTION_BITS)
+    private static final int LOG_FRACTION_BITS = 10;
+    private static final int[] LOG_TABLE = new int[1 << LOG_FRACTION_BITS];
+
+    static {
+        for (int m = 0; m < LOG_TABLE.length; m++) {
+            LOG_TABLE[m] = (int) Math.round((1 << LOG_FRACTION_BITS) * Math.log1p((double) m / LOG_TABLE.length)
+                    / Math.log(2));
+        }
+    }
+
+    // Default transposition table size: 2^18 entries
+    private static final int DEFAULT_TABLE_BITS = 18;
+
+    // Deepest iteration of a time-bounded search
+    private static final int MAX_DEPTH = 20;
+
+    // Number of threads searching each move, and the pool running the helper threads (created on first use)
+    private int threads = 1;
+    private ExecutorService helperPool;
+
+    // Candidate moves are the empty cells within this distance of a stone
+    private int moveRadius = 1;
+
+    // Forced wins by continuous fours are looked for before the main search, within this many positions
+    private static final int VCF_MAX_ATTACKS = 16;
+    private long vcfNodeLimit = 20_000;
+    private VcfSolver vcfSolver;
+
+    // Whether each search prints its statistics, the statistics of the last search, and where they are recorded
+    private boolean verbose = true;
+    private SearchStats lastStats = new SearchStats();
+    private SearchMetrics metrics = SearchMetrics.global();
+
+    // Results of earlier processes: the root result of every search is read from and written to this cache, if set
+    private PositionCache positionCache;
+
+    // Opening moves: a position in the book is answered from it without a search, if set
+    private OpeningBook openingBook;
+
+    // Pondering: the predicted replies of the opponent are searched on the opponent's time, see startPondering
+    private ExecutorService ponderPool;
+    private AtomicBoolean ponderStop;
+    private Future<?> pondering;
+    private SearchWorker[] ponderWorkers = new SearchWorker[0];
+    private long[] ponderKeys = new long[0]; // Root keys of the pondered positions
+    private long lastPonderNodes;
+
     // Constructor for Minimax class, takes a Board object as argument
     public Minimax(Board board) {
+        this(board, new TranspositionTable(DEFAULT_TABLE_BITS, TranspositionTable.ReplacementPolicy.DEPTH_PREFERRED));
+    }
+
+    // Constructor for Minimax class with a custom transposition table (size and replacement policy)
+    public Minimax(Board board, TranspositionTable table) {
         this.board = board; // assigning the board instance variable to the passed board object
+        this.table = table;
+    }
+
+    /*
+     * Sets the number of threads that search each move. With more than one thread, helper threads search the same
+     * position on their own board copies and share results through the transposition table (Lazy SMP).
+     */
+    public void setThreads(int threads) {
+        if (threads < 1) {
+            throw new IllegalArgumentException("threads must be at least 1: " + threads);
+        }
+        if (threads != this.threads) {
+            shutdown();
+            this.threads = threads;
+        }
+    }
+
+    /*
+     * Sets how far from the existing stones candidate moves are generated. 1 only considers the adjacent cells.
+     */
+    public void setMoveRadius(int moveRadius) {
+        if (moveRadius < 1) {
+            throw new IllegalArgumentException("moveRadius must be at least 1: " + moveRadius);
+        }
+        this.moveRadius = moveRadius;
+    }
+
+    /*
+     * Sets how many positions the VCF solver may search before the main search starts. 0 disables it.
+     */
+    public void setVcfNodeLimit(long vcfNodeLimit) {
+        this.vcfNodeLimit = vcfNodeLimit;
+    }
+
+    /*
+     * Sets the persistent cache of search results. A position searched before, in this process or an earlier one,
+     * starts from the cached result instead of from scratch. null disables the cache.
+     */
+    public void setPositionCache(PositionCache positionCache) {
+        this.positionCache = positionCache;
+    }
+
+    /*
+     * Sets the opening book. A position in the book is answered with one of its book moves, picked at random by
+     * weight, instead of a search. null disables the book.
+     */
+    public void setOpeningBook(OpeningBook openingBook) {
+        this.openingBook = openingBook;
+    }
+
+    // Sets whether each search prints its statistics
+    public void setVerbose(boolean verbose) {
+        this.verbose = verbose;
+    }
+
+    // Returns the number of positions searched for the last move, by all threads and the VCF solver
+    public long getLastNodeCount() {
+        return lastStats.getNodes() + lastStats.getVcfNodes();
+    }
+
+    // Returns the statistics of the last search, added up over all threads
+    public SearchStats getLastStats() {
+        return lastStats;
+    }
+
+    // Sets the registry that every search records its statistics into; null records nothing
+    public void setMetrics(SearchMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    // Stops pondering and the helper threads. A later parallel search starts new ones.
+    public void shutdown() {
+        stopPondering();
+        if (ponderPool != null) {
+            ponderPool.shutdownNow();
+            ponderPool = null;
+        }
+        if (helperPool != null) {
+            helperPool.shutdownNow();
+            helperPool = null;
+        }
+    }
+
+    /*
+     * Starts pondering: while the opponent (black) thinks, a background thread searches the positions after its
+     * most likely replies, deeper and deeper in turn, and leaves the results in the transposition table. The first
+     * prediction is the reply the last search expected; the rest are the best ranked by the move orderer. When the
+     * opponent plays one of them, the next search finds its position searched already. Pondering stops at the next
+     * getNextMove or stopPondering, so it never competes with a search for the CPU.
+     */
+    public void startPondering(int replies) {
+        stopPondering();
+        int size = board.getBoardSize();
+        TranspositionTable.Entry expected = new TranspositionTable.Entry();
+        int tableMove = table.probe(board.getHash() ^ Zobrist.sideToMove(true), expected)
+                ? expected.getMove() : TranspositionTable.NO_MOVE;
+        MoveGenerator generator = new MoveGenerator(size, moveRadius);
+        int generated = generator.generate(board, 0);
+        int[] moves = generator.getMoves(0);
+        new MoveOrderer(size).order(board.getBoardMatrix(), moves, generator.getScores(0), generated, 0, true,
+                tableMove, true);
+        int count = Math.min(replies, generated);
+        AtomicBoolean stop = new AtomicBoolean();
+        List<SearchWorker> workers = new ArrayList<>();
+        List<Long> keys = new ArrayList<>();
+        for (int i = 0; i < count; i++) {
+            Board reply = new Board(board);
+            reply.addPieceNoGUI(moves[i] % size, moves[i] / size, true);
+            if (!reply.isTerminal()) {
+                workers.add(new SearchWorker(reply, table, stop, 0, moveRadius));
+                keys.add(reply.getHash() ^ Zobrist.sideToMove(false));
+            }
+        }
+        if (workers.isEmpty()) {
+            return;
+        }
+        if (ponderPool == null) {
+            ponderPool = Executors.newSingleThreadExecutor(runnable -> {
+                Thread thread = new Thread(runnable, "minimax-ponder");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        ponderStop = stop;
+        ponderWorkers = workers.toArray(new SearchWorker[0]);
+        ponderKeys = keys.stream().mapToLong(Long::longValue).toArray();
+        SearchWorker[] ponderers = ponderWorkers;
+        pondering = ponderPool.submit(() -> {
+            for (int depth = 1; depth <= MAX_DEPTH; depth++) {
+                for (SearchWorker worker : ponderers) {
+                    if (!worker.searchUntilStopped(depth)) {
+                        return;
+                    }
+                }
+            }
+        });
+    }
+
+    /*
+     * Stops pondering and waits until the pondering thread has let go of the table. Returns whether pondering was
+     * running. Harmless to call when it is not.
+     */
+    public boolean stopPondering() {
+        if (pondering == null) {
+            return false;
+        }
+        ponderStop.set(true);
+        try {
+            pondering.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            throw new IllegalStateException("Pondering failed", e.getCause());
+        }
+        pondering = null;
+        lastPonderNodes = 0;
+        for (SearchWorker worker : ponderWorkers) {
+            lastPonderNodes += worker.getNodeCount();
+        }
+        ponderWorkers = new SearchWorker[0];
+        return true;
+    }
+
+    // Returns the number of positions searched by the last pondering
+    public long getLastPonderNodes() {
+        return lastPonderNodes;
     }
 
     // Getter for WIN_SCORE
@@ -21,198 +253,220 @@ public class Minimax {
         return WIN_SCORE;
     }
 
-    // Method to evaluate board for the white player
-    public static double evaluateBoardForWhite(Board board, boolean blacksTurn) {
-        evaluationCount++;
-        double blackScore = getScore(board, true, blacksTurn); // calculating score for black
-        double whiteScore = getScore(board, false, blacksTurn); // calculating score for white
-        if (blackScore == 0) {
-            blackScore = 1.0; // to avoid division by zero
-        }
-        // returns the ratio of white score to black score
-        return whiteScore / blackScore;
+    // Method to evaluate board for the white player: the ratio of white's score to black's, on a log scale in fixed
+    // point. It orders positions like the ratio does, and negating it gives black's view, as the negamax needs.
+    public static int evaluateBoardForWhite(Board board, boolean blacksTurn) {
+        int blackScore = Math.max(1, getScore(board, true, blacksTurn)); // calculating score for black
+        int whiteScore = Math.max(1, getScore(board, false, blacksTurn)); // calculating score for white
+        return log2(whiteScore) - log2(blackScore);
+    }
+
+    // Returns log2(x) for x >= 1 in fixed point, from its highest bit and a table lookup of the next ones
+    private static int log2(int x) {
+        int exponent = 31 - Integer.numberOfLeadingZeros(x);
+        int mantissa = exponent >= LOG_FRACTION_BITS ? x >>> (exponent - LOG_FRACTION_BITS)
+                : x << (LOG_FRACTION_BITS - exponent);
+        return (exponent << LOG_FRACTION_BITS) + LOG_TABLE[mantissa & (LOG_TABLE.length - 1)];
     }
 
     // Method to calculate the score for the board for a particular player
+    // The board keeps the per-line scores up to date as stones are placed, so this is a constant-time lookup
     public static int getScore(Board board, boolean forBlack, boolean blacksTurn) {
-        // Getting board matrix from the board object
-        int[][] boardMatrix = board.getBoardMatrix();
-        int[] evaluations = new int[3];
-        // Evaluating board horizontally, vertically, and diagonally
-        evaluateRows(boardMatrix, forBlack, blacksTurn, evaluations);
-        evaluateColumns(boardMatrix, forBlack, blacksTurn, evaluations);
-        evaluateDiagonals(boardMatrix, forBlack, blacksTurn, evaluations);
-        // Returning the final evaluation score
-        return evaluations[2];
+        return board.getEvaluator().getScore(forBlack, blacksTurn);
+    }
+
+    // Method to calculate the score for a particular player by scanning the whole board
+    public static int getScoreFullScan(Board board, boolean forBlack, boolean blacksTurn) {
+        return new IncrementalEvaluator(board.getBoardMatrix()).getScore(forBlack, blacksTurn);
     }
 
     // Method to calculate the next move, takes depth of the search tree as argument
     public int[] getNextMove(int depth) {
+        return getNextMove(depth, 0, 0);
+    }
+
+    // Method to calculate the next move within a wall-clock budget in milliseconds
+    public int[] getNextMoveWithinTime(long timeLimitMillis) {
+        return getNextMove(MAX_DEPTH, timeLimitMillis, 0);
+    }
+
+    // Method to calculate the next move within a wall-clock budget in milliseconds and/or a budget of searched nodes
+    // (0 means no limit). The search deepens one ply at a time and returns the best move of the last finished depth.
+    public int[] getNextMoveWithinBudget(long timeLimitMillis, long nodeLimit) {
+        return getNextMove(MAX_DEPTH, timeLimitMillis, nodeLimit);
+    }
+
+    /**
+     * Picks the AI's (white's) move from an opening book, at random by weight, as the search does before searching.
+     *
+     * @param book  the opening book, or null
+     * @param board the position
+     * @return the move as {row, col}, or null if there is no book or the position is not in it
+     */
+    public static int[] bookMove(OpeningBook book, Board board) {
+        int move = book == null ? OpeningBook.NO_MOVE : book.pick(board, false, ThreadLocalRandom.current());
+        if (move == OpeningBook.NO_MOVE) {
+            return null;
+        }
+        return new int[]{move / board.getBoardSize(), move % board.getBoardSize()};
+    }
+
+    // Iterative deepening: searches depth 1, 2, 3... up to maxDepth until the time or node budget runs out
+    private int[] getNextMove(int maxDepth, long timeLimitMillis, long nodeLimit) {
+        // The search gets the whole CPU; whatever pondering found for this position is in the table
+        boolean ponderHit = stopPondering() && isPondered(board.getHash() ^ Zobrist.sideToMove(false));
         board.startAI(); // signaling the board that thinking process has started
+        int[] bookMove = bookMove(openingBook, board);
+        if (bookMove != null) {
+            lastStats = new SearchStats();
+            if (verbose) {
+                System.out.println("Book move");
+            }
+            board.stopAI();
+            return bookMove;
+        }
         int[] move = new int[2];
         long startTime = System.currentTimeMillis(); // note the start time for calculation
-        Object[] bestMove = searchMove(board); // searching for winning move
+        long startNanos = System.nanoTime();
+        AtomicBoolean stop = new AtomicBoolean();
+        SearchWorker main = new SearchWorker(board, table, stop, 0, moveRadius);
+        List<SearchWorker> helpers = new ArrayList<>();
+        long rootKey = board.getHash() ^ Zobrist.sideToMove(false); // the AI plays white
+        int forcedWin = findForcedWin(); // searching for a forced win by continuous fours
         // If a winning move is found, assign it to the move array
-        if (bestMove != null) {
-            move[0] = (Integer) bestMove[1];
-            move[1] = (Integer) bestMove[2];
+        if (forcedWin != VcfSolver.NO_MOVE) {
+            move[0] = forcedWin / board.getBoardSize();
+            move[1] = forcedWin % board.getBoardSize();
         } else {
             // If no winning move is found, perform Minimax search
-            bestMove = minimaxSearchAB(depth, new Board(board), true, -1.0, getWinningScore());
-            if (bestMove[1] == null) {
+            table.newSearch();
+            seedFromCache(rootKey);
+            main.setBudget(timeLimitMillis > 0 ? startTime + timeLimitMillis : Long.MAX_VALUE, nodeLimit);
+            List<Future<?>> running = startHelpers(maxDepth, stop, helpers);
+            int bestMove = main.iterativeDeepening(maxDepth, timeLimitMillis);
+            // The main thread's result is the answer; stop the helpers and wait for them to unwind
+            stop.set(true);
+            for (Future<?> future : running) {
+                try {
+                    future.get();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                } catch (ExecutionException e) {
+                    throw new IllegalStateException("Search helper failed", e.getCause());
+                }
+            }
+            if (bestMove == TranspositionTable.NO_MOVE) {
                 move = null;
             } else {
-                move[0] = (Integer) bestMove[1];
-                move[1] = (Integer) bestMove[2];
+                move[0] = bestMove / board.getBoardSize();
+                move[1] = bestMove % board.getBoardSize();
             }
+            storeInCache(rootKey);
+        }
+        // Add up the workers' statistics; the iterations are the main worker's
+        SearchStats stats = main.getStats();
+        for (SearchWorker helper : helpers) {
+            stats.add(helper.getStats());
+        }
+        stats.vcfNodes = vcfSolver == null ? 0 : vcfSolver.getNodeCount();
+        stats.setElapsedNanos(System.nanoTime() - startNanos);
+        lastStats = stats;
+        if (metrics != null) {
+            metrics.record(stats);
+        }
+        // Print the statistics of the search
+        if (verbose) {
+            System.out.println(stats + " Threads: " + (helpers.size() + 1)
+                    + (ponderHit ? " Ponder hit after " + lastPonderNodes + " nodes" : ""));
         }
-        // Print number of cases calculated and the calculation time
-        System.out.println("Cases calculated: " + evaluationCount + " Calculation time: " + (System.currentTimeMillis() - startTime) + " ms");
         board.stopAI(); // signaling the board that thinking process has finished
-        evaluationCount = 0;
         return move;
     }
 
-    // Minimax algorithm with alpha-beta pruning, returns best move
-    private static Object[] minimaxSearchAB(int depth, Board dummyBoard, boolean max, double alpha, double beta) {
-        // If the depth reaches zero or no possible moves, evaluate the board and return
-        ArrayList<int[]> allPossibleMoves = dummyBoard.getAvailableMoves();
-        if (depth == 0 || allPossibleMoves.size() == 0) {
-            return new Object[]{evaluateBoardForWhite(dummyBoard, !max), null, null};
-        }
-        Object[] bestMove = new Object[3];
-        bestMove[0] = max ? Double.NEGATIVE_INFINITY : Double.POSITIVE_INFINITY;
-        for (int[] move : allPossibleMoves) {
-            // Apply the move to the board
-            dummyBoard.addPieceNoGUI(move[1], move[0], !max);
-            // Perform minimax search on the new board state
-            Object[] tempMove = minimaxSearchAB(depth - 1, dummyBoard, !max, alpha, beta);
-            // Undo the move
-            dummyBoard.removePiece(move[1], move[0]);
-            // If it's max's turn
-            if (max) {
-                if ((Double) tempMove[0] > (Double) bestMove[0]) {
-                    bestMove = tempMove;
-                    bestMove[1] = move[0];
-                    bestMove[2] = move[1];
-                    alpha = (Double) bestMove[0];
-                }
-                if (beta <= alpha) {
-                    break;
-                }
-            }
-            // If it's min's turn
-            else {
-                if ((Double) tempMove[0] < (Double) bestMove[0]) {
-                    bestMove = tempMove;
-                    bestMove[1] = move[0];
-                    bestMove[2] = move[1];
-                    beta = (Double) bestMove[0];
-                }
-                if (beta <= alpha) {
-                    break;
-                }
-            }
-        }
-        return bestMove;
-    }
-
-    // Search for a winning move and return it if it exists
-    private static Object[] searchMove(Board board) {
-        ArrayList<int[]> allPossibleMoves = board.getAvailableMoves(); // Generate all possible moves
-        for (int[] move : allPossibleMoves) {
-            evaluationCount++; // Count the evaluation
-            Board dummyBoard = new Board(board); // Create a dummy board
-            dummyBoard.addPieceNoGUI(move[1], move[0], false); // Apply the move to the dummy board
-            // If the applied move creates a winning score for the player, return this move
-            if (getScore(dummyBoard, false, false) >= WIN_SCORE) {
-                Object[] finalMove = new Object[3];
-                finalMove[1] = move[0];
-                finalMove[2] = move[1];
-                return finalMove;
+    // Returns whether a position was one of the last pondered ones
+    private boolean isPondered(long rootKey) {
+        for (long key : ponderKeys) {
+            if (key == rootKey) {
+                return true;
             }
         }
-        return null; // If no winning move is found, return null
+        return false;
     }
 
-    // Evaluate the board horizontally
-    public static void evaluateRows(int[][] boardMatrix, boolean forBlack, boolean playersTurn, int[] eval) {
-        // Loop over the board matrix
-        for (int i = 0; i < boardMatrix.length; i++) {
-            for (int j = 0; j < boardMatrix[0].length; j++) {
-                evaluateDiagonals(boardMatrix, i, j, forBlack, playersTurn, eval);
-            }
-            evaluateLineAfterPass(eval, forBlack, playersTurn);
+    // Looks for a forced win of white by continuous fours, returns its first move or VcfSolver.NO_MOVE
+    private int findForcedWin() {
+        if (vcfNodeLimit <= 0) {
+            return VcfSolver.NO_MOVE;
+        }
+        if (vcfSolver == null) {
+            vcfSolver = new VcfSolver(board.getBoardSize(), VCF_MAX_ATTACKS);
         }
+        return vcfSolver.solve(board, false, vcfNodeLimit);
     }
 
-    // Evaluate the board vertically
-    public static void evaluateColumns(int[][] boardMatrix, boolean forBlack, boolean playersTurn, int[] eval) {
-        // Loop over the board matrix
-        for (int j = 0; j < boardMatrix[0].length; j++) {
-            for (int i = 0; i < boardMatrix.length; i++) {
-                evaluateDiagonals(boardMatrix, i, j, forBlack, playersTurn, eval);
-            }
-            evaluateLineAfterPass(eval, forBlack, playersTurn);
+    // Copies the cached result of the root position into the transposition table, so that the search returns it
+    // right away if it is deep enough and otherwise searches its move first. The cache is keyed on the canonical
+    // form of the position, so a rotated or mirrored copy of a cached position is a hit too.
+    private void seedFromCache(long rootKey) {
+        if (positionCache == null) {
+            return;
+        }
+        TranspositionTable.Entry cached = new TranspositionTable.Entry();
+        if (!positionCache.probe(canonicalRootKey(), cached) || cached.getMove() == TranspositionTable.NO_MOVE) {
+            return;
+        }
+        int size = board.getBoardSize();
+        if (cached.getMove() >= size * size) {
+            return; // Not a move on this board; the cache file is from another game
         }
+        int move = board.fromCanonical(cached.getMove());
+        if (board.getBoardMatrix()[move / size][move % size] != 0) {
+            return;
+        }
+        table.store(rootKey, cached.getDepth(), cached.getBound(), cached.getScore(), move);
     }
 
-    // Evaluate the board diagonally
-    public static void evaluateDiagonals(int[][] boardMatrix, boolean forBlack, boolean playersTurn, int[] eval) {
-        // Loop over the board matrix diagonally from top-left to bottom-right
-        for (int k = 0; k <= 2 * (boardMatrix.length - 1); k++) {
-            int iStart = Math.max(0, k - boardMatrix.length + 1);
-            int iEnd = Math.min(boardMatrix.length - 1, k);
-            for (int i = iStart; i <= iEnd; ++i) {
-                evaluateDiagonals(boardMatrix, i, k - i, forBlack, playersTurn, eval);
-            }
-            evaluateLineAfterPass(eval, forBlack, playersTurn);
-        }
-        // Loop over the board matrix diagonally from bottom-left to top-right
-        for (int k = 1 - boardMatrix.length; k < boardMatrix.length; k++) {
-            int iStart = Math.max(0, k);
-            int iEnd = Math.min(boardMatrix.length + k - 1, boardMatrix.length - 1);
-            for (int i = iStart; i <= iEnd; ++i) {
-                evaluateDiagonals(boardMatrix, i, i - k, forBlack, playersTurn, eval);
-            }
-            evaluateLineAfterPass(eval, forBlack, playersTurn);
+    // Writes the transposition table's result for the root position to the cache, in canonical coordinates
+    private void storeInCache(long rootKey) {
+        if (positionCache == null) {
+            return;
+        }
+        TranspositionTable.Entry result = new TranspositionTable.Entry();
+        if (table.probe(rootKey, result) && result.getMove() != TranspositionTable.NO_MOVE) {
+            positionCache.store(canonicalRootKey(), result.getDepth(), result.getBound(), result.getScore(),
+                    board.toCanonical(result.getMove()));
         }
     }
 
-    // Evaluate the score based on the directions of the stones
-    // For each position on the board, it checks whether the stone is of the same color as the bot's,
-    // an empty spot or the opponent's color, and updates the evaluation variables accordingly.
-    public static void evaluateDiagonals(int[][] boardMatrix, int i, int j, boolean isBot, boolean botsTurn, int[] eval) {
-        if (boardMatrix[i][j] == (isBot ? 2 : 1)) {
-            eval[0]++; // If the stone at (i, j) is of the same color as the bot's, increment the count of consecutive stones
-        } else if (boardMatrix[i][j] == 0) {
-            if (eval[0] > 0) { // If there was a consecutive streak but we hit an empty spot, update the score and reset the count
-                eval[1]--;
-                eval[2] += getConsecutiveSetScore(eval[0], eval[1], isBot == botsTurn);
-                eval[0] = 0;
-            }
-            eval[1] = 1; // Reset the block count to 1
-        } else if (eval[0] > 0) {
-            eval[2] += getConsecutiveSetScore(eval[0], eval[1], isBot == botsTurn); // If there was a consecutive streak but we hit the opponent's stone, update the score and reset the count
-            eval[0] = 0;
-            eval[1] = 2; // Set the block count to 2
-        } else {
-            eval[1] = 2; // If the stone at (i, j) is of the opponent's color and there was no consecutive streak, set the block count to 2
-        }
+    // The key of the root position in the position cache: its canonical hash, with white to move
+    private long canonicalRootKey() {
+        return board.getCanonicalHash() ^ Zobrist.sideToMove(false);
     }
 
-    // After one pass of evaluation in a particular direction, this method is called to handle the case where a streak might end at the edge of the board
-    private static void evaluateLineAfterPass(int[] eval, boolean isBot, boolean playersTurn) {
-        if (eval[0] > 0) {
-            eval[2] += getConsecutiveSetScore(eval[0], eval[1], isBot == playersTurn); // If there was a streak at the end, update the score
+    // Starts threads - 1 helper workers that search until the stop flag is set
+    private List<Future<?>> startHelpers(int maxDepth, AtomicBoolean stop, List<SearchWorker> helpers) {
+        List<Future<?>> running = new ArrayList<>();
+        if (threads == 1) {
+            return running;
+        }
+        if (helperPool == null) {
+            helperPool = Executors.newFixedThreadPool(threads - 1, runnable -> {
+                Thread thread = new Thread(runnable, "minimax-helper");
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        for (int id = 1; id < threads; id++) {
+            SearchWorker helper = new SearchWorker(board, table, stop, id, moveRadius);
+            helpers.add(helper);
+            running.add(helperPool.submit(() -> helper.iterativeDeepening(maxDepth, 0)));
         }
-        eval[0] = 0; // Reset the count and block count for the next pass
-        eval[1] = 2;
+        return running;
     }
 
     // This method calculates the score for a set of consecutive stones, depending on the number of stones, the number of blocks at both ends, and whose turn it is
     public static int getConsecutiveSetScore(int count, int blocks, boolean currentTurn) {
-        final int winGuarantee = 1000000; // A large score that guarantees a win
+        final int winGuarantee = FOUR_SCORE; // A large score that guarantees a win
         if (blocks == 2 && count < 5)
             return 0; // If both ends are blocked and the number of consecutive stones is less than 5, then this set is useless
         switch (count) { // Depending on the count of consecutive stones
@@ -230,7 +484,7 @@ public class Minimax {
             case 3: { // 3 stones in a row
                 if (blocks == 0) { // If it's not blocked at all
                     if (currentTurn)
-                        return 50_000; // If it's the bot's turn, this could potentially lead to a win, so give it a high score
+                        return OPEN_THREE_SCORE; // If it's the bot's turn, this could potentially lead to a win, so give it a high score
                     else return 200; // If it's the opponent's turn, it's not as dangerous but still worth some points
                 } else { // If blocked at one end
                     if (currentTurn) return 10; // If it's the bot's turn, this is a slightly advantageous position
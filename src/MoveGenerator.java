@@ -0,0 +1,118 @@
+/**
+ * Allocation-free move generator for the Minimax search.
+ * <p>
+ * Moves are written as packed cells (row * boardSize + column) into an {@code int[]} buffer that is preallocated for
+ * every ply, so generating moves at a node creates no garbage. Candidates are the empty cells within a configurable
+ * distance of a stone, and each one gets a relevance score from the stones around it; the buffer is ordered by that
+ * score, most relevant first.
+ */
+public class MoveGenerator {
+    // Deepest ply that has a buffer
+    public static final int MAX_PLY = 64;
+
+    // Relevance weights of a stone one and two cells away along a line
+    private static final int NEAR_WEIGHT = 3;
+    private static final int FAR_WEIGHT = 1;
+    private static final int MAX_RELEVANCE = 8 * (NEAR_WEIGHT + FAR_WEIGHT) + 8;
+
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    private final int boardSize;
+    private final int radius;
+    private final int[][] moves; // Per ply: the generated moves, most relevant first
+    private final int[][] scores; // Per ply: the relevance score of each move
+    private final int[] unsorted; // Scratch: moves in row-major order
+    private final int[] unsortedScores;
+    private final int[] bucketStart = new int[MAX_RELEVANCE + 2];
+
+    public MoveGenerator(int boardSize, int radius) {
+        if (radius < 1) {
+            throw new IllegalArgumentException("radius must be at least 1: " + radius);
+        }
+        this.boardSize = boardSize;
+        this.radius = radius;
+        int cells = boardSize * boardSize;
+        moves = new int[MAX_PLY][cells];
+        scores = new int[MAX_PLY][cells];
+        unsorted = new int[cells];
+        unsortedScores = new int[cells];
+    }
+
+    public int getRadius() {
+        return radius;
+    }
+
+    // Returns the buffer of the given ply, filled by the last call to generate for that ply
+    public int[] getMoves(int ply) {
+        return moves[ply];
+    }
+
+    // Returns the relevance scores matching getMoves(ply)
+    public int[] getScores(int ply) {
+        return scores[ply];
+    }
+
+    /**
+     * Generates the candidate moves of the board into the buffer of the given ply, most relevant first.
+     *
+     * @param board the position
+     * @param ply   the distance from the root of the search
+     * @return the number of moves generated
+     */
+    public int generate(Board board, int ply) {
+        int count = board.getBitBoard().generateMoves(radius, unsorted);
+        int[][] matrix = board.getBoardMatrix();
+        for (int b = 0; b < bucketStart.length; b++) {
+            bucketStart[b] = 0;
+        }
+        for (int i = 0; i < count; i++) {
+            int score = relevance(matrix, unsorted[i] / boardSize, unsorted[i] % boardSize);
+            unsortedScores[i] = score;
+            bucketStart[MAX_RELEVANCE - score + 1]++;
+        }
+        // Counting sort by descending score; stable, so ties stay in row-major order
+        for (int b = 1; b < bucketStart.length; b++) {
+            bucketStart[b] += bucketStart[b - 1];
+        }
+        int[] plyMoves = moves[ply];
+        int[] plyScores = scores[ply];
+        for (int i = 0; i < count; i++) {
+            int position = bucketStart[MAX_RELEVANCE - unsortedScores[i]]++;
+            plyMoves[position] = unsorted[i];
+            plyScores[position] = unsortedScores[i];
+        }
+        return count;
+    }
+
+    // Scores a cell by the stones on the four lines through it: close stones count more, and a run of stones of
+    // one color next to the cell gets a bonus
+    private int relevance(int[][] matrix, int row, int col) {
+        int score = 0;
+        for (int[] dir : DIRECTIONS) {
+            for (int sign = -1; sign <= 1; sign += 2) {
+                int r1 = row + sign * dir[0];
+                int c1 = col + sign * dir[1];
+                if (r1 < 0 || r1 >= boardSize || c1 < 0 || c1 >= boardSize) {
+                    continue;
+                }
+                int near = matrix[r1][c1];
+                if (near != 0) {
+                    score += NEAR_WEIGHT;
+                }
+                int r2 = r1 + sign * dir[0];
+                int c2 = c1 + sign * dir[1];
+                if (r2 < 0 || r2 >= boardSize || c2 < 0 || c2 >= boardSize) {
+                    continue;
+                }
+                int far = matrix[r2][c2];
+                if (far != 0) {
+                    score += FAR_WEIGHT;
+                    if (far == near) {
+                        score++;
+                    }
+                }
+            }
+        }
+        return score;
+    }
+}
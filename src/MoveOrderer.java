@@ -0,0 +1,123 @@
+import java.util.Arrays;
+
+/**
+ * Orders the moves of a search node so that alpha-beta finds cutoffs early:
+ * <ol>
+ *     <li>the transposition table move,</li>
+ *     <li>immediate wins, then blocks of the opponent's five,</li>
+ *     <li>open fours and fours, then open threes (own threats before blocks of the opponent's),</li>
+ *     <li>the killer moves of the ply,</li>
+ *     <li>everything else by history heuristic score, then by relevance.</li>
+ * </ol>
+ * Killers and history are learned from the cutoffs of the worker that owns the orderer, so no state is shared
+ * between threads.
+ */
+public class MoveOrderer {
+    private static final int KILLERS_PER_PLY = 2;
+
+    // Sort keys: the tier in the high bits, then history, then relevance
+    private static final int TIER_SHIFT = 24;
+    private static final int HISTORY_SHIFT = 8;
+    private static final int MAX_HISTORY = (1 << (TIER_SHIFT - HISTORY_SHIFT)) - 1;
+    private static final int KILLER_TIER = 1;
+    private static final int THREAT_TIER = 2; // Threat tiers start here, above the killers
+
+    private final int boardSize;
+    private final int[][] killers; // Per ply: the last moves that caused a cutoff
+    private final int[][] history; // Per color (0: white, 1: black) and cell: cutoff score
+    private final int[] keys;
+
+    public MoveOrderer(int boardSize) {
+        this.boardSize = boardSize;
+        killers = new int[MoveGenerator.MAX_PLY][KILLERS_PER_PLY];
+        history = new int[2][boardSize * boardSize];
+        keys = new int[boardSize * boardSize];
+        for (int[] plyKillers : killers) {
+            Arrays.fill(plyKillers, TranspositionTable.NO_MOVE);
+        }
+    }
+
+    /**
+     * Sorts the first count moves of the buffer, best first.
+     *
+     * @param matrix     the board matrix of the node
+     * @param moves      packed moves (row * boardSize + column)
+     * @param relevance  the relevance score of each move, below 256
+     * @param count      the number of moves
+     * @param ply        the distance from the root
+     * @param blacksTurn whether black is to move
+     * @param tableMove  the transposition table move, or TranspositionTable.NO_MOVE
+     * @param threats    whether to rank by threats; classifying threats costs about as much as evaluating a leaf,
+     *                   so it does not pay off right above the leaves
+     */
+    public void order(int[][] matrix, int[] moves, int[] relevance, int count, int ply, boolean blacksTurn,
+                      int tableMove, boolean threats) {
+        int own = blacksTurn ? 2 : 1;
+        int opponent = 3 - own;
+        int[] colorHistory = history[blacksTurn ? 1 : 0];
+        for (int i = 0; i < count; i++) {
+            int move = moves[i];
+            int tier;
+            if (move == tableMove) {
+                tier = THREAT_TIER + 2 * Threats.FIVE + 1;
+            } else if (!threats) {
+                tier = isKiller(ply, move) ? KILLER_TIER : 0;
+            } else {
+                int row = move / boardSize;
+                int col = move % boardSize;
+                // Own threats rank above blocking the same threat of the opponent
+                int ownThreat = Threats.threatAt(matrix, row, col, own);
+                int opponentThreat = Threats.threatAt(matrix, row, col, opponent);
+                int threatTier = Math.max(2 * ownThreat, 2 * opponentThreat - 1);
+                if (threatTier > 0) {
+                    tier = THREAT_TIER + threatTier;
+                } else if (isKiller(ply, move)) {
+                    tier = KILLER_TIER;
+                } else {
+                    tier = 0;
+                }
+            }
+            keys[i] = (tier << TIER_SHIFT) | (Math.min(colorHistory[move], MAX_HISTORY) << HISTORY_SHIFT)
+                    | relevance[i];
+        }
+        // Insertion sort by descending key; the moves arrive roughly ordered by relevance already
+        for (int i = 1; i < count; i++) {
+            int key = keys[i];
+            int move = moves[i];
+            int rel = relevance[i];
+            int j = i - 1;
+            while (j >= 0 && keys[j] < key) {
+                keys[j + 1] = keys[j];
+                moves[j + 1] = moves[j];
+                relevance[j + 1] = relevance[j];
+                j--;
+            }
+            keys[j + 1] = key;
+            moves[j + 1] = move;
+            relevance[j + 1] = rel;
+        }
+    }
+
+    /**
+     * Records a move that caused a beta cutoff.
+     *
+     * @param ply        the distance from the root
+     * @param move       the packed move
+     * @param depth      the remaining depth of the node
+     * @param blacksTurn whether black made the move
+     */
+    public void recordCutoff(int ply, int move, int depth, boolean blacksTurn) {
+        int[] colorHistory = history[blacksTurn ? 1 : 0];
+        colorHistory[move] = Math.min(colorHistory[move] + depth * depth, MAX_HISTORY);
+        int[] plyKillers = killers[ply];
+        if (plyKillers[0] != move) {
+            plyKillers[1] = plyKillers[0];
+            plyKillers[0] = move;
+        }
+    }
+
+    private boolean isKiller(int ply, int move) {
+        int[] plyKillers = killers[ply];
+        return plyKillers[0] == move || plyKillers[1] == move;
+    }
+}
@@ -0,0 +1,312 @@
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Off-heap storage of an MCTS tree, as a structure of arrays: node n's fields are the n-th ints of a few columns of
+ * one direct buffer. A node holds no position, only the move that leads to it; a search rebuilds the position of a
+ * node by playing the moves from the root down to it. A node therefore costs {@link #BYTES_PER_NODE} bytes instead of
+ * a board, and the whole tree lives outside the Java heap in a buffer of fixed size.
+ * <p>
+ * Children are linked into a list from their parent (first child, next sibling) and always get a higher index than
+ * their parent. Several threads can search the tree together: the statistics are updated with atomic adds, the
+ * children of a node are added under the node's lock (see {@link #lockOf(int)}), and a new child is published with a
+ * release store, so that a thread walking the list sees its fields.
+ * <p>
+ * When the pool is full, no more nodes are added. Between searches, {@link #reroot(int, int)} keeps only the subtree
+ * of the new root and drops its least visited nodes until the tree fits a given size.
+ */
+public class NodePool {
+    // Returned for a missing node: no parent, no child, no sibling, or no room in the pool
+    public static final int NONE = -1;
+
+    // Flags of a node
+    public static final int TERMINAL = 1; // The game is over in the node's position
+    public static final int FULLY_EXPANDED = 2; // All candidate moves have a child
+    public static final int PRUNED = 4; // Children were dropped by reroot, so expanding has to skip the ones left
+    private static final int WINNER_SHIFT = 3; // The winner of a terminal node (0, 1 or 2) is kept above the flags
+
+    // Columns: the fields of every node
+    private static final int PARENT = 0;
+    private static final int FIRST_CHILD = 1;
+    private static final int NEXT_SIBLING = 2;
+    private static final int MOVE = 3; // The move leading to the node, as row * boardSize + column
+    private static final int VISITS = 4;
+    private static final int WINS = 5; // Wins less losses, for the player who made the move
+    private static final int VIRTUAL_LOSS = 6; // Playouts running below the node
+    private static final int CURSOR = 7; // Candidate moves tried by expansion so far
+    private static final int FLAGS = 8;
+    // All moves as first (AMAF): the playouts through the parent in which this node's move was played later by the
+    // same player, and their wins less losses
+    private static final int AMAF_VISITS = 9;
+    private static final int AMAF_WINS = 10;
+    private static final int SCRATCH = 11; // Used by reroot
+    private static final int COLUMNS = 12;
+
+    public static final int BYTES_PER_NODE = COLUMNS * Integer.BYTES;
+
+    private static final int LOCKS = 64; // Lock stripes for adding children
+
+    private static final VarHandle INT = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.nativeOrder());
+
+    private final ByteBuffer buffer;
+    private final int capacity;
+    private final Object[] locks = new Object[LOCKS];
+    private final AtomicInteger size = new AtomicInteger();
+
+    /**
+     * Creates a pool for as many nodes as fit in a memory budget. The buffer is allocated at once, outside the heap.
+     *
+     * @param maxBytes the memory budget; at most 2 GB are used
+     */
+    public NodePool(long maxBytes) {
+        long nodes = Math.min(maxBytes, Integer.MAX_VALUE) / BYTES_PER_NODE;
+        if (nodes < 1) {
+            throw new IllegalArgumentException("The memory budget holds no node: " + maxBytes + " bytes");
+        }
+        capacity = (int) nodes;
+        buffer = ByteBuffer.allocateDirect(capacity * BYTES_PER_NODE).order(ByteOrder.nativeOrder());
+        for (int i = 0; i < LOCKS; i++) {
+            locks[i] = new Object();
+        }
+    }
+
+    public int capacity() {
+        return capacity;
+    }
+
+    // Returns the number of nodes in use
+    public int size() {
+        return Math.min(size.get(), capacity);
+    }
+
+    /**
+     * Drops all nodes and adds a root.
+     *
+     * @return the root, node 0
+     */
+    public int newRoot() {
+        size.set(0);
+        return add(NONE, NONE, 0);
+    }
+
+    /**
+     * Adds a child to a node. The caller holds the node's lock.
+     *
+     * @param parent the node
+     * @param move   the move leading from the node to the child
+     * @param flags  TERMINAL and the winner (see {@link #winnerFlags(int)}) if the move ends the game
+     * @return the child, or NONE if the pool is full
+     */
+    public int addChild(int parent, int move, int flags) {
+        int child = add(parent, move, flags);
+        if (child != NONE) {
+            set(NEXT_SIBLING, child, get(FIRST_CHILD, parent));
+            // Publish the child only now that its fields are written
+            INT.setRelease(buffer, offset(FIRST_CHILD, parent), child);
+        }
+        return child;
+    }
+
+    private int add(int parent, int move, int flags) {
+        int node;
+        do {
+            node = size.get();
+            if (node >= capacity) {
+                return NONE;
+            }
+        } while (!size.compareAndSet(node, node + 1));
+        set(PARENT, node, parent);
+        set(FIRST_CHILD, node, NONE);
+        set(NEXT_SIBLING, node, NONE);
+        set(MOVE, node, move);
+        set(VISITS, node, 0);
+        set(WINS, node, 0);
+        set(VIRTUAL_LOSS, node, 0);
+        set(CURSOR, node, 0);
+        set(FLAGS, node, flags);
+        set(AMAF_VISITS, node, 0);
+        set(AMAF_WINS, node, 0);
+        return node;
+    }
+
+    // Returns the lock to hold while adding children to a node; nodes share a few locks
+    public Object lockOf(int node) {
+        return locks[node & (LOCKS - 1)];
+    }
+
+    // Returns the flags of a terminal node with the given winner (0 for a draw)
+    public static int winnerFlags(int winner) {
+        return TERMINAL | winner << WINNER_SHIFT;
+    }
+
+    public int getParent(int node) {
+        return get(PARENT, node);
+    }
+
+    public int getFirstChild(int node) {
+        return (int) INT.getAcquire(buffer, offset(FIRST_CHILD, node));
+    }
+
+    public int getNextSibling(int node) {
+        return get(NEXT_SIBLING, node);
+    }
+
+    public int getMove(int node) {
+        return get(MOVE, node);
+    }
+
+    public int getVisits(int node) {
+        return get(VISITS, node);
+    }
+
+    public int getWins(int node) {
+        return get(WINS, node);
+    }
+
+    public int getVirtualLoss(int node) {
+        return get(VIRTUAL_LOSS, node);
+    }
+
+    public int getAmafVisits(int node) {
+        return get(AMAF_VISITS, node);
+    }
+
+    public int getAmafWins(int node) {
+        return get(AMAF_WINS, node);
+    }
+
+    // Returns the number of candidate moves expansion has tried at a node
+    public int getCursor(int node) {
+        return get(CURSOR, node);
+    }
+
+    // Sets the number of candidate moves tried; the caller holds the node's lock
+    public void setCursor(int node, int cursor) {
+        set(CURSOR, node, cursor);
+    }
+
+    public boolean hasFlag(int node, int flag) {
+        return ((int) INT.getAcquire(buffer, offset(FLAGS, node)) & flag) != 0;
+    }
+
+    // Sets a flag; the caller holds the node's lock
+    public void setFlag(int node, int flag) {
+        INT.setRelease(buffer, offset(FLAGS, node), get(FLAGS, node) | flag);
+    }
+
+    // Returns the winner of a terminal node: 0 for a draw, 1 for white or 2 for black
+    public int getWinner(int node) {
+        return get(FLAGS, node) >>> WINNER_SHIFT;
+    }
+
+    // Marks a node as being played out by a thread; it counts as a lost visit until update
+    public void addVirtualLoss(int node) {
+        INT.getAndAdd(buffer, offset(VIRTUAL_LOSS, node), 1);
+    }
+
+    // Adds the result of a playout to a node (+1 win, -1 loss, 0 draw) and removes the playout's virtual loss
+    public void update(int node, int result) {
+        INT.getAndAdd(buffer, offset(VISITS, node), 1);
+        if (result != 0) {
+            INT.getAndAdd(buffer, offset(WINS, node), result);
+        }
+        INT.getAndAdd(buffer, offset(VIRTUAL_LOSS, node), -1);
+    }
+
+    // Adds the result of a playout in which the node's move was played by the same player later on (all moves as
+    // first, AMAF): +1 win, -1 loss, 0 draw
+    public void updateAmaf(int node, int result) {
+        INT.getAndAdd(buffer, offset(AMAF_VISITS, node), 1);
+        if (result != 0) {
+            INT.getAndAdd(buffer, offset(AMAF_WINS, node), result);
+        }
+    }
+
+    /**
+     * Makes a node the root, dropping every node outside its subtree, and if the subtree holds more than maxNodes
+     * nodes, its least visited ones too. The kept nodes are moved to the front of the pool, the root to index 0.
+     * A node visited less than another is never kept while the other is dropped, except that the root and the
+     * ancestors of kept nodes are kept. Only call this while no thread is searching the tree.
+     *
+     * @param root     the new root
+     * @param maxNodes the most nodes to keep
+     * @return the new index of the root, 0
+     */
+    public int reroot(int root, int maxNodes) {
+        int used = size();
+        // Children have higher indexes than their parents, so one pass in index order finds the subtree; count its
+        // nodes by the bit length of their visits
+        int[] counts = new int[Integer.SIZE + 1];
+        for (int node = root; node < used; node++) {
+            int parent = get(PARENT, node);
+            boolean inSubtree = node == root || (parent >= root && get(SCRATCH, parent) == 1);
+            set(SCRATCH, node, inSubtree ? 1 : 0);
+            if (inSubtree) {
+                counts[Integer.SIZE - Integer.numberOfLeadingZeros(get(VISITS, node))]++;
+            }
+        }
+        // Keep the nodes with at least minVisits visits, the lowest power of two that keeps at most maxNodes. A
+        // parent has at least the visits of each child, so the kept nodes hang together.
+        int kept = 0;
+        int bits = Integer.SIZE;
+        while (bits > 0 && kept + counts[bits - 1] <= maxNodes) {
+            kept += counts[--bits];
+        }
+        int minVisits = bits == 0 ? 0 : 1 << (bits - 1);
+        // Move the kept nodes down in index order, so that no node is overwritten before it has moved; SCRATCH then
+        // holds the new index of each moved node, or NONE
+        int count = 0;
+        for (int node = root; node < used; node++) {
+            if (get(SCRATCH, node) != 1) {
+                set(SCRATCH, node, NONE);
+                continue;
+            }
+            int parent = get(PARENT, node);
+            int newParent = node == root ? NONE : get(SCRATCH, parent);
+            if (node != root && (newParent == NONE || get(VISITS, node) < minVisits)) {
+                set(SCRATCH, node, NONE);
+                if (newParent != NONE) {
+                    // The parent expands again from its first candidate, skipping the children it kept
+                    set(FLAGS, newParent, (get(FLAGS, newParent) | PRUNED) & ~FULLY_EXPANDED);
+                    set(CURSOR, newParent, 0);
+                }
+                continue;
+            }
+            int index = count++;
+            set(SCRATCH, node, index);
+            set(PARENT, index, newParent);
+            set(FIRST_CHILD, index, NONE);
+            set(MOVE, index, get(MOVE, node));
+            set(VISITS, index, get(VISITS, node));
+            set(WINS, index, get(WINS, node));
+            set(VIRTUAL_LOSS, index, 0);
+            set(CURSOR, index, get(CURSOR, node));
+            set(FLAGS, index, get(FLAGS, node));
+            set(AMAF_VISITS, index, get(AMAF_VISITS, node));
+            set(AMAF_WINS, index, get(AMAF_WINS, node));
+            if (newParent == NONE) {
+                set(NEXT_SIBLING, index, NONE);
+            } else {
+                set(NEXT_SIBLING, index, get(FIRST_CHILD, newParent));
+                set(FIRST_CHILD, newParent, index);
+            }
+        }
+        size.set(count);
+        return 0;
+    }
+
+    private int get(int column, int node) {
+        return (int) INT.get(buffer, offset(column, node));
+    }
+
+    private void set(int column, int node, int value) {
+        INT.set(buffer, offset(column, node), value);
+    }
+
+    private int offset(int column, int node) {
+        return (column * capacity + node) * Integer.BYTES;
+    }
+}
@@ -0,0 +1,153 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Random;
+
+/**
+ * A read-only book of opening moves: for every position in it, the moves played there with their weights.
+ * <p>
+ * The file is a header, the position records sorted by key, then the move records; see {@link OpeningBookBuilder}
+ * for how it is made. It is memory-mapped, so opening a book reads nothing and costs no heap: a lookup is a binary
+ * search over the mapped position records. Positions are stored in their canonical form (see {@link Symmetry}), so
+ * one entry answers all 8 rotated and mirrored copies of a position; the moves are mapped back to the board's own
+ * orientation on the way out.
+ */
+public class OpeningBook implements Closeable {
+    static final int MAGIC = 0x474D4B42; // "GMKB"
+    static final int VERSION = 1;
+
+    // Header: magic, version, board size, number of positions, number of moves (4 bytes each)
+    static final int HEADER_SIZE = 20;
+
+    // Position record: key (8 bytes), index of its first move record, number of moves (4 bytes each)
+    static final int POSITION_SIZE = 16;
+
+    // Move record: move in canonical coordinates, weight (4 bytes each)
+    static final int MOVE_SIZE = 8;
+
+    // Returned by the lookups when the book has no move
+    public static final int NO_MOVE = -1;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int boardSize;
+    private final int positions;
+    private final int movesOffset;
+
+    /**
+     * Opens a book file.
+     *
+     * @param file the book
+     * @throws IOException if the file cannot be read or is not a book
+     */
+    public OpeningBook(Path file) throws IOException {
+        channel = FileChannel.open(file, StandardOpenOption.READ);
+        buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC || buffer.getInt(4) != VERSION) {
+            channel.close();
+            throw new IOException("Not an opening book of version " + VERSION + ": " + file);
+        }
+        boardSize = buffer.getInt(8);
+        positions = buffer.getInt(12);
+        int moves = buffer.getInt(16);
+        movesOffset = HEADER_SIZE + positions * POSITION_SIZE;
+        if (buffer.capacity() != movesOffset + (long) moves * MOVE_SIZE) {
+            channel.close();
+            throw new IOException("Truncated opening book: " + file);
+        }
+    }
+
+    public int getBoardSize() {
+        return boardSize;
+    }
+
+    // Returns the number of positions in the book
+    public int size() {
+        return positions;
+    }
+
+    /**
+     * Picks a book move for the side to move, at random in proportion to the weights, or the heaviest move if
+     * random is null.
+     *
+     * @param board      the position
+     * @param blacksTurn whether black is to move
+     * @param random     the source of randomness, or null
+     * @return the move as row * boardSize + column in the board's orientation, or NO_MOVE if the position is not
+     * in the book
+     */
+    public int pick(Board board, boolean blacksTurn, Random random) {
+        if (board.getBoardSize() != boardSize) {
+            return NO_MOVE;
+        }
+        int position = find(key(board.getCanonicalHash(), blacksTurn));
+        if (position < 0) {
+            return NO_MOVE;
+        }
+        int first = buffer.getInt(HEADER_SIZE + position * POSITION_SIZE + 8);
+        int count = buffer.getInt(HEADER_SIZE + position * POSITION_SIZE + 12);
+        long total = 0;
+        int heaviest = first;
+        for (int m = first; m < first + count; m++) {
+            total += weight(m);
+            if (weight(m) > weight(heaviest)) {
+                heaviest = m;
+            }
+        }
+        int chosen = heaviest;
+        if (random != null && total > 0) {
+            long ticket = (long) (random.nextDouble() * total);
+            for (int m = first; m < first + count; m++) {
+                ticket -= weight(m);
+                if (ticket < 0) {
+                    chosen = m;
+                    break;
+                }
+            }
+        }
+        int move = board.fromCanonical(buffer.getInt(movesOffset + chosen * MOVE_SIZE));
+        // The book is keyed by hash, so make sure the move fits the position
+        return board.getBoardMatrix()[move / boardSize][move % boardSize] == 0 ? move : NO_MOVE;
+    }
+
+    /**
+     * Returns the book key of a canonical position.
+     *
+     * @param canonicalHash the Zobrist hash of the canonical form of the position
+     * @param blacksTurn    whether black is to move
+     * @return the key
+     */
+    static long key(long canonicalHash, boolean blacksTurn) {
+        return canonicalHash ^ Zobrist.sideToMove(blacksTurn);
+    }
+
+    private int weight(int move) {
+        return buffer.getInt(movesOffset + move * MOVE_SIZE + 4);
+    }
+
+    // Binary search over the position records, which are sorted by key as signed longs
+    private int find(long key) {
+        int low = 0;
+        int high = positions - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            long midKey = buffer.getLong(HEADER_SIZE + mid * POSITION_SIZE);
+            if (midKey < key) {
+                low = mid + 1;
+            } else if (midKey > key) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
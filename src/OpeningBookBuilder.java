@@ -0,0 +1,290 @@
+import java.io.BufferedOutputStream;
+import java.io.BufferedReader;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.function.Function;
+
+/**
+ * Builds an {@link OpeningBook} from game records or from self-play.
+ * <p>
+ * Usage: {@code java OpeningBookBuilder --out FILE [--size S] [--plies P] [--min-weight W]
+ * (--games FILE | --self-play N [--engine SPEC] [--opening K] [--seed X])}
+ * <p>
+ * A game record file has one game per line: the moves as {@code row,col} separated by spaces, black first. Lines
+ * starting with {@code #} are skipped. Self-play games start from the center and K random stones near it, then an
+ * engine (a {@link MatchRunner} engine spec, by default {@code minimax:depth=2}) plays both sides.
+ * <p>
+ * The first P moves of every game are added to the book, under the canonical form of the position they were played
+ * in. A move of the game's winner weighs 2 and any other move 1, so the book prefers the moves that won. Every
+ * position is also added with the colors swapped, so the book answers whichever color moved first. Moves lighter
+ * than the minimum weight are left out.
+ */
+public class OpeningBookBuilder {
+    private static final int OPENING_RADIUS = 2; // Random opening stones are placed this close to the center
+    private static final int WIN_WEIGHT = 2;
+    private static final int PLAY_WEIGHT = 1;
+
+    private final int boardSize;
+    private final int plies;
+    // Book key -> canonical move -> weight
+    private final Map<Long, Map<Integer, Integer>> positions = new HashMap<>();
+
+    public OpeningBookBuilder(int boardSize, int plies) {
+        this.boardSize = boardSize;
+        this.plies = plies;
+    }
+
+    public static void main(String[] args) throws IOException {
+        Path out = null;
+        Path games = null;
+        int selfPlay = 0;
+        String engine = "minimax:depth=2";
+        int size = 19;
+        int plies = 12;
+        int minWeight = 1;
+        int opening = 3;
+        long seed = 1;
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "--out":
+                    out = Path.of(args[++i]);
+                    break;
+                case "--games":
+                    games = Path.of(args[++i]);
+                    break;
+                case "--self-play":
+                    selfPlay = Integer.parseInt(args[++i]);
+                    break;
+                case "--engine":
+                    engine = args[++i];
+                    break;
+                case "--size":
+                    size = Integer.parseInt(args[++i]);
+                    break;
+                case "--plies":
+                    plies = Integer.parseInt(args[++i]);
+                    break;
+                case "--min-weight":
+                    minWeight = Integer.parseInt(args[++i]);
+                    break;
+                case "--opening":
+                    opening = Integer.parseInt(args[++i]);
+                    break;
+                case "--seed":
+                    seed = Long.parseLong(args[++i]);
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option: " + args[i]);
+            }
+        }
+        if (out == null || (games == null) == (selfPlay == 0)) {
+            System.out.println("Usage: java OpeningBookBuilder --out FILE [--size S] [--plies P] [--min-weight W]"
+                    + " (--games FILE | --self-play N [--engine SPEC] [--opening K] [--seed X])");
+            return;
+        }
+        OpeningBookBuilder builder = new OpeningBookBuilder(size, plies);
+        int played = games != null ? builder.addGameRecords(games)
+                : builder.addSelfPlay(selfPlay, MatchRunner.parseEngine(engine), opening, seed);
+        int written = builder.write(out, minWeight);
+        System.out.println("Games: " + played + " Positions: " + written + " Book: " + out);
+    }
+
+    /**
+     * Adds the games of a game record file.
+     *
+     * @param file the game records
+     * @return the number of games added
+     * @throws IOException if the file cannot be read
+     */
+    public int addGameRecords(Path file) throws IOException {
+        int games = 0;
+        try (BufferedReader reader = Files.newBufferedReader(file)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                line = line.trim();
+                if (line.isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] tokens = line.split("\\s+");
+                int[] moves = new int[tokens.length];
+                for (int i = 0; i < tokens.length; i++) {
+                    String[] rowCol = tokens[i].split(",");
+                    if (rowCol.length != 2) {
+                        throw new IllegalArgumentException("Bad move '" + tokens[i] + "' on line " + lineNumber);
+                    }
+                    int row = Integer.parseInt(rowCol[0]);
+                    int col = Integer.parseInt(rowCol[1]);
+                    if (row < 0 || row >= boardSize || col < 0 || col >= boardSize) {
+                        throw new IllegalArgumentException("Move '" + tokens[i] + "' off the board on line "
+                                + lineNumber);
+                    }
+                    moves[i] = row * boardSize + col;
+                }
+                addGame(moves);
+                games++;
+            }
+        }
+        return games;
+    }
+
+    /**
+     * Plays games of an engine against itself and adds them.
+     *
+     * @param games   the number of games
+     * @param engine  the engine factory, as parsed by {@link MatchRunner#parseEngine(String)}
+     * @param opening the number of opening stones, the first at the center and the rest random
+     * @param seed    the seed of the random openings
+     * @return the number of games added
+     */
+    public int addSelfPlay(int games, Function<Board, Engine> engine, int opening, long seed) {
+        Random random = new Random(seed);
+        for (int game = 0; game < games; game++) {
+            addGame(playGame(engine, opening, random));
+        }
+        return games;
+    }
+
+    // Plays one game from a random opening; each side sees the board with itself as white, as the engines expect
+    private int[] playGame(Function<Board, Engine> factory, int opening, Random random) {
+        Board board = new Board(boardSize);
+        Board[] views = {new Board(boardSize), new Board(boardSize)}; // views[0] is black's
+        Engine[] players = {factory.apply(views[0]), factory.apply(views[1])};
+        List<Integer> moves = new ArrayList<>();
+        try {
+            int center = boardSize / 2;
+            while (!board.isTerminal()) {
+                boolean black = moves.size() % 2 == 0;
+                int move;
+                if (moves.size() < opening) {
+                    int row = center;
+                    int col = center;
+                    if (!moves.isEmpty()) {
+                        row += random.nextInt(2 * OPENING_RADIUS + 1) - OPENING_RADIUS;
+                        col += random.nextInt(2 * OPENING_RADIUS + 1) - OPENING_RADIUS;
+                    }
+                    move = row * boardSize + col;
+                    if (board.getBoardMatrix()[row][col] != 0) {
+                        continue;
+                    }
+                } else {
+                    int[] selected = players[black ? 0 : 1].selectMove();
+                    if (selected == null || board.getBoardMatrix()[selected[0]][selected[1]] != 0) {
+                        break;
+                    }
+                    move = selected[0] * boardSize + selected[1];
+                }
+                int row = move / boardSize;
+                int col = move % boardSize;
+                board.addPieceNoGUI(col, row, black);
+                views[0].addPieceNoGUI(col, row, !black);
+                views[1].addPieceNoGUI(col, row, black);
+                moves.add(move);
+            }
+        } finally {
+            for (Engine player : players) {
+                player.close();
+            }
+        }
+        return moves.stream().mapToInt(Integer::intValue).toArray();
+    }
+
+    /**
+     * Adds the first moves of a game, black first.
+     *
+     * @param moves the moves of the game as row * boardSize + column
+     */
+    public void addGame(int[] moves) {
+        int winner = replayWinner(moves);
+        // board has the stones as played, swapped the same stones with the colors swapped
+        Board board = new Board(boardSize);
+        Board swapped = new Board(boardSize);
+        for (int ply = 0; ply < moves.length && ply < plies; ply++) {
+            boolean black = ply % 2 == 0;
+            int weight = winner == (black ? 2 : 1) ? WIN_WEIGHT : PLAY_WEIGHT;
+            addMove(board, black, moves[ply], weight);
+            addMove(swapped, !black, moves[ply], weight);
+            int row = moves[ply] / boardSize;
+            int col = moves[ply] % boardSize;
+            board.addPieceNoGUI(col, row, black);
+            swapped.addPieceNoGUI(col, row, !black);
+        }
+    }
+
+    // Replays a game, checking its moves; returns 0 if nobody made five, 1 if white did or 2 if black did
+    private int replayWinner(int[] moves) {
+        Board board = new Board(boardSize);
+        for (int ply = 0; ply < moves.length; ply++) {
+            int row = moves[ply] / boardSize;
+            int col = moves[ply] % boardSize;
+            if (board.getBoardMatrix()[row][col] != 0) {
+                throw new IllegalArgumentException("Illegal move " + row + "," + col + " at ply " + ply);
+            }
+            board.addPieceNoGUI(col, row, ply % 2 == 0);
+            if (board.isFiveAt(col, row)) {
+                return ply % 2 == 0 ? 2 : 1;
+            }
+        }
+        return 0;
+    }
+
+    // Adds a move played in a position, under the canonical form of the position
+    private void addMove(Board board, boolean blacksTurn, int move, int weight) {
+        long key = OpeningBook.key(board.getCanonicalHash(), blacksTurn);
+        int canonicalMove = board.toCanonical(move);
+        positions.computeIfAbsent(key, k -> new HashMap<>()).merge(canonicalMove, weight, Integer::sum);
+    }
+
+    /**
+     * Writes the book.
+     *
+     * @param file      the book file, replaced if it exists
+     * @param minWeight the lightest move to keep
+     * @return the number of positions written
+     * @throws IOException if the file cannot be written
+     */
+    public int write(Path file, int minWeight) throws IOException {
+        List<Long> keys = new ArrayList<>();
+        int moveCount = 0;
+        for (Map.Entry<Long, Map<Integer, Integer>> position : positions.entrySet()) {
+            int kept = (int) position.getValue().values().stream().filter(w -> w >= minWeight).count();
+            if (kept > 0) {
+                keys.add(position.getKey());
+                moveCount += kept;
+            }
+        }
+        keys.sort(Long::compare);
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(file)))) {
+            out.writeInt(OpeningBook.MAGIC);
+            out.writeInt(OpeningBook.VERSION);
+            out.writeInt(boardSize);
+            out.writeInt(keys.size());
+            out.writeInt(moveCount);
+            int first = 0;
+            for (long key : keys) {
+                int kept = (int) positions.get(key).values().stream().filter(w -> w >= minWeight).count();
+                out.writeLong(key);
+                out.writeInt(first);
+                out.writeInt(kept);
+                first += kept;
+            }
+            for (long key : keys) {
+                for (Map.Entry<Integer, Integer> move : positions.get(key).entrySet()) {
+                    if (move.getValue() >= minWeight) {
+                        out.writeInt(move.getKey());
+                        out.writeInt(move.getValue());
+                    }
+                }
+            }
+        }
+        return keys.size();
+    }
+}
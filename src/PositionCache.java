@@ -0,0 +1,239 @@
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Persistent cache of search results keyed by the Zobrist hash of the position, so that a new process starts with
+ * the results of earlier ones.
+ * <p>
+ * The file is a header followed by 2^sizeBits fixed 24-byte records, and it is memory-mapped: opening it does not
+ * parse anything, and a lookup reads the mapped pages directly. Records are grouped in buckets of four. A new result
+ * goes to the record already holding its position or to a free record of its bucket; otherwise it replaces the record
+ * with the lowest depth once age is taken off, so deep results stay longer but results no longer written do not stay
+ * forever.
+ * <p>
+ * Stores only queue the result. A background thread writes queued results to the mapping and flushes the file to
+ * disk every few seconds, so the search never waits for the file. Like the transposition table, every record keeps
+ * its hash XORed with its other two words, so a record read while the writer is halfway through it is a miss.
+ */
+public class PositionCache implements Closeable {
+    private static final int MAGIC = 0x474D4B43; // "GMKC"
+    private static final int VERSION = 2; // 2: scores are the search's int scores
+
+    // Header: magic, version, board size, size bits (4 bytes each), then the write clock (8 bytes)
+    private static final int HEADER_SIZE = 24;
+    private static final int CLOCK_OFFSET = 16;
+
+    // Record: check (hash ^ score bits ^ info), score bits, info word, write stamp
+    private static final int RECORD_SIZE = 24;
+    private static final int SCORE_OFFSET = 8;
+    private static final int INFO_OFFSET = 16;
+    private static final int STAMP_OFFSET = 20;
+    private static final int BUCKET_SIZE = 4;
+
+    // Layout of the info word: move (16 bits), depth (8 bits), bound (2 bits), used flag
+    private static final int MOVE_BITS = 16;
+    private static final int DEPTH_SHIFT = 16;
+    private static final int BOUND_SHIFT = 24;
+    private static final int USED = 1 << 26;
+
+    // Every this many writes, a record counts as one ply shallower when choosing what to evict
+    private static final int AGE_STEP = 1024;
+
+    private static final int QUEUE_CAPACITY = 4096;
+    private static final long FLUSH_INTERVAL_MILLIS = 5000;
+
+    private final FileChannel channel;
+    private final MappedByteBuffer buffer;
+    private final int bucketMask;
+    private final BlockingQueue<long[]> pending = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+    private final Thread writer;
+    private volatile boolean closed;
+    private int clock; // Number of records written; only touched by the writer thread
+
+    /**
+     * Opens the cache file, creating it if it does not exist. A file written for another board size, table size or
+     * format version is cleared.
+     *
+     * @param file      the cache file
+     * @param boardSize the size of the board the results are for
+     * @param sizeBits  log2 of the number of records, between 2 and 24
+     * @throws IOException if the file cannot be opened or mapped
+     */
+    public PositionCache(Path file, int boardSize, int sizeBits) throws IOException {
+        if (sizeBits < 2 || sizeBits > 24) {
+            throw new IllegalArgumentException("sizeBits must be between 2 and 24: " + sizeBits);
+        }
+        int records = 1 << sizeBits;
+        long length = HEADER_SIZE + (long) records * RECORD_SIZE;
+        channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.READ,
+                StandardOpenOption.WRITE);
+        boolean valid = channel.size() == length;
+        if (channel.size() > length) {
+            channel.truncate(length);
+        }
+        buffer = channel.map(FileChannel.MapMode.READ_WRITE, 0, length);
+        valid = valid && buffer.getInt(0) == MAGIC && buffer.getInt(4) == VERSION
+                && buffer.getInt(8) == boardSize && buffer.getInt(12) == sizeBits;
+        if (!valid) {
+            for (long i = 0; i < length; i += 8) {
+                buffer.putLong((int) i, 0);
+            }
+            buffer.putInt(0, MAGIC);
+            buffer.putInt(4, VERSION);
+            buffer.putInt(8, boardSize);
+            buffer.putInt(12, sizeBits);
+        }
+        clock = (int) buffer.getLong(CLOCK_OFFSET);
+        bucketMask = records / BUCKET_SIZE - 1;
+        writer = new Thread(this::writeBack, "position-cache-writer");
+        writer.setDaemon(true);
+        writer.start();
+    }
+
+    /**
+     * Looks up a position. Safe to call from any thread.
+     *
+     * @param key   the Zobrist hash of the position, including the side to move
+     * @param entry receives the cached result if the position is in the cache
+     * @return true if the position was found
+     */
+    public boolean probe(long key, TranspositionTable.Entry entry) {
+        int base = bucketOffset(key);
+        for (int i = 0; i < BUCKET_SIZE; i++) {
+            int offset = base + i * RECORD_SIZE;
+            int info = buffer.getInt(offset + INFO_OFFSET);
+            long scoreBits = buffer.getLong(offset + SCORE_OFFSET);
+            if ((info & USED) != 0 && (buffer.getLong(offset) ^ scoreBits ^ info) == key) {
+                int move = info & ((1 << MOVE_BITS) - 1);
+                entry.set((info >>> DEPTH_SHIFT) & 0xFF, (info >>> BOUND_SHIFT) & 0x3,
+                        (int) scoreBits,
+                        move == (1 << MOVE_BITS) - 1 ? TranspositionTable.NO_MOVE : move);
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Queues a search result to be written in the background. If the queue is full the result is dropped, so this
+     * never blocks.
+     *
+     * @param key   the Zobrist hash of the position, including the side to move
+     * @param depth the depth the position was searched to
+     * @param bound TranspositionTable.EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param score the score found
+     * @param move  the best move as row * boardSize + column, or TranspositionTable.NO_MOVE
+     */
+    public void store(long key, int depth, int bound, int score, int move) {
+        int info = USED | (bound << BOUND_SHIFT) | (Math.min(depth, 0xFF) << DEPTH_SHIFT)
+                | (move & ((1 << MOVE_BITS) - 1));
+        pending.offer(new long[]{key, score, info});
+    }
+
+    // Returns the number of records
+    public int capacity() {
+        return (bucketMask + 1) * BUCKET_SIZE;
+    }
+
+    /**
+     * Writes the queued results, flushes the file and stops the writer thread.
+     */
+    @Override
+    public void close() throws IOException {
+        if (closed) {
+            return;
+        }
+        closed = true;
+        writer.interrupt();
+        try {
+            writer.join();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        channel.close();
+    }
+
+    // The writer thread: writes queued results and flushes every FLUSH_INTERVAL_MILLIS while there are changes
+    private void writeBack() {
+        long lastFlush = System.currentTimeMillis();
+        boolean dirty = false;
+        while (!closed) {
+            try {
+                long[] result = pending.poll(FLUSH_INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+                if (result != null) {
+                    write(result);
+                    dirty = true;
+                }
+            } catch (InterruptedException e) {
+                break; // Closing
+            }
+            if (dirty && System.currentTimeMillis() - lastFlush >= FLUSH_INTERVAL_MILLIS) {
+                flush();
+                lastFlush = System.currentTimeMillis();
+                dirty = false;
+            }
+        }
+        long[] result;
+        while ((result = pending.poll()) != null) {
+            write(result);
+        }
+        flush();
+    }
+
+    private void flush() {
+        buffer.putLong(CLOCK_OFFSET, clock);
+        buffer.force();
+    }
+
+    // Writes one result into its bucket: over its own record unless that is deeper, into a free one, or over the
+    // weakest one
+    private void write(long[] result) {
+        long key = result[0];
+        long scoreBits = result[1];
+        int info = (int) result[2];
+        int base = bucketOffset(key);
+        int victim = -1;
+        long victimPriority = Long.MAX_VALUE;
+        for (int i = 0; i < BUCKET_SIZE; i++) {
+            int offset = base + i * RECORD_SIZE;
+            int oldInfo = buffer.getInt(offset + INFO_OFFSET);
+            if ((oldInfo & USED) == 0) {
+                if (victimPriority > Long.MIN_VALUE) {
+                    victim = offset;
+                    victimPriority = Long.MIN_VALUE;
+                }
+                continue;
+            }
+            long oldKey = buffer.getLong(offset) ^ buffer.getLong(offset + SCORE_OFFSET) ^ oldInfo;
+            if (oldKey == key) {
+                if (((oldInfo >>> DEPTH_SHIFT) & 0xFF) > ((info >>> DEPTH_SHIFT) & 0xFF)) {
+                    return; // Keep the deeper result
+                }
+                victim = offset;
+                break;
+            }
+            int age = (clock - buffer.getInt(offset + STAMP_OFFSET)) / AGE_STEP;
+            long priority = ((oldInfo >>> DEPTH_SHIFT) & 0xFF) - (long) age;
+            if (priority < victimPriority) {
+                victim = offset;
+                victimPriority = priority;
+            }
+        }
+        clock++;
+        buffer.putLong(victim, key ^ scoreBits ^ info);
+        buffer.putLong(victim + SCORE_OFFSET, scoreBits);
+        buffer.putInt(victim + INFO_OFFSET, info);
+        buffer.putInt(victim + STAMP_OFFSET, clock);
+    }
+
+    private int bucketOffset(long key) {
+        return HEADER_SIZE + ((int) key & bucketMask) * BUCKET_SIZE * RECORD_SIZE;
+    }
+}
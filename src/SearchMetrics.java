@@ -0,0 +1,328 @@
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import javax.management.InstanceAlreadyExistsException;
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+/**
+ * Process-wide totals of all Minimax searches, for seeing in production where the search time goes.
+ * <p>
+ * A search records its {@link SearchStats} here once, when it is over, so the registry is never touched inside the
+ * search. Recording only adds to striped counters, so concurrent searches (such as the game server's engine
+ * workers) do not wait for each other. The metrics can be read through JMX, see {@link #registerMBean()}, and in the
+ * Prometheus text format, see {@link #toPrometheus()}; both show the same counters, cutoffs and histograms.
+ * <p>
+ * A percentile that falls in the last histogram bucket, above the largest bound, is reported as the longest time
+ * recorded, so a slow tail is not hidden behind the bound.
+ */
+public class SearchMetrics implements SearchMetricsMBean {
+    public static final String OBJECT_NAME = "Gomoku:type=SearchMetrics";
+
+    // Upper bounds of the latency histogram buckets, in milliseconds; a last bucket counts the rest
+    private static final long[] LATENCY_BOUNDS_MILLIS = {1, 2, 5, 10, 20, 50, 100, 200, 500, 1000, 2000, 5000, 10000};
+
+    private static final SearchMetrics GLOBAL = new SearchMetrics();
+
+    private final LongAdder searches = new LongAdder();
+    private final LongAdder nodes = new LongAdder();
+    private final LongAdder quiescenceNodes = new LongAdder();
+    private final LongAdder evaluations = new LongAdder();
+    private final LongAdder vcfNodes = new LongAdder();
+    private final LongAdder tableProbes = new LongAdder();
+    private final LongAdder tableHits = new LongAdder();
+    private final LongAdder depthSum = new LongAdder();
+    private final DoubleAdder branchingFactorSum = new DoubleAdder();
+    private final LongAdder branchingFactorCount = new LongAdder(); // Searches with at least two iterations
+    private final AtomicLongArray cutoffs = new AtomicLongArray(SearchStats.MAX_PLY);
+    private final Histogram latency = new Histogram(); // Whole searches
+    private final Histogram iterations = new Histogram(); // Single iterations of the main worker
+
+    // Returns the registry the searches record into unless they are given another one
+    public static SearchMetrics global() {
+        return GLOBAL;
+    }
+
+    /**
+     * Registers the global registry with the platform MBean server, so that tools such as JConsole show it. Does
+     * nothing if it is registered already.
+     */
+    public static void registerMBean() {
+        try {
+            ManagementFactory.getPlatformMBeanServer().registerMBean(GLOBAL, new ObjectName(OBJECT_NAME));
+        } catch (InstanceAlreadyExistsException e) {
+            // Registered by an earlier call
+        } catch (JMException e) {
+            throw new IllegalStateException("Could not register " + OBJECT_NAME, e);
+        }
+    }
+
+    /**
+     * Adds the statistics of a finished search.
+     *
+     * @param stats the statistics of all workers of the search
+     */
+    public void record(SearchStats stats) {
+        searches.increment();
+        nodes.add(stats.getNodes());
+        quiescenceNodes.add(stats.getQuiescenceNodes());
+        evaluations.add(stats.getEvaluations());
+        vcfNodes.add(stats.getVcfNodes());
+        tableProbes.add(stats.getTableProbes());
+        tableHits.add(stats.getTableHits());
+        depthSum.add(stats.getDepthReached());
+        double branchingFactor = stats.getEffectiveBranchingFactor();
+        if (branchingFactor > 0) {
+            branchingFactorSum.add(branchingFactor);
+            branchingFactorCount.increment();
+        }
+        for (int ply = 0; ply < SearchStats.MAX_PLY; ply++) {
+            long count = stats.getCutoffs(ply);
+            if (count != 0) {
+                cutoffs.addAndGet(ply, count);
+            }
+        }
+        latency.record(stats.getElapsedNanos());
+        for (int depth = 1; depth <= stats.getDepthReached(); depth++) {
+            long nanos = stats.getIterationNanos(depth);
+            if (nanos > 0) {
+                iterations.record(nanos);
+            }
+        }
+    }
+
+    @Override
+    public long getSearches() {
+        return searches.sum();
+    }
+
+    @Override
+    public long getNodes() {
+        return nodes.sum();
+    }
+
+    @Override
+    public long getQuiescenceNodes() {
+        return quiescenceNodes.sum();
+    }
+
+    @Override
+    public long getEvaluations() {
+        return evaluations.sum();
+    }
+
+    @Override
+    public long getVcfNodes() {
+        return vcfNodes.sum();
+    }
+
+    @Override
+    public double getTableHitRate() {
+        long probes = tableProbes.sum();
+        return probes == 0 ? 0 : (double) tableHits.sum() / probes;
+    }
+
+    @Override
+    public double getAverageEffectiveBranchingFactor() {
+        long count = branchingFactorCount.sum();
+        return count == 0 ? 0 : branchingFactorSum.sum() / count;
+    }
+
+    @Override
+    public double getAverageDepth() {
+        long count = searches.sum();
+        return count == 0 ? 0 : (double) depthSum.sum() / count;
+    }
+
+    @Override
+    public double getMeanLatencyMillis() {
+        return latency.mean() / 1e6;
+    }
+
+    @Override
+    public double getLatencyP50Millis() {
+        return latency.percentileMillis(50);
+    }
+
+    @Override
+    public double getLatencyP99Millis() {
+        return latency.percentileMillis(99);
+    }
+
+    @Override
+    public double getMaxLatencyMillis() {
+        return latency.maxMillis();
+    }
+
+    @Override
+    public long getTableProbes() {
+        return tableProbes.sum();
+    }
+
+    @Override
+    public long getTableHits() {
+        return tableHits.sum();
+    }
+
+    @Override
+    public long[] getCutoffsByPly() {
+        long[] counts = new long[SearchStats.MAX_PLY];
+        for (int ply = 0; ply < SearchStats.MAX_PLY; ply++) {
+            counts[ply] = cutoffs.get(ply);
+        }
+        return counts;
+    }
+
+    // Returns the beta cutoffs at a ply, summed over all searches
+    public long getCutoffs(int ply) {
+        return ply < SearchStats.MAX_PLY ? cutoffs.get(ply) : 0;
+    }
+
+    @Override
+    public long[] getHistogramBoundsMillis() {
+        return LATENCY_BOUNDS_MILLIS.clone();
+    }
+
+    @Override
+    public long[] getLatencyHistogram() {
+        return latency.counts();
+    }
+
+    @Override
+    public long[] getIterationHistogram() {
+        return iterations.counts();
+    }
+
+    @Override
+    public long getIterations() {
+        return iterations.count.sum();
+    }
+
+    @Override
+    public double getMeanIterationMillis() {
+        return iterations.mean() / 1e6;
+    }
+
+    @Override
+    public double getMaxIterationMillis() {
+        return iterations.maxMillis();
+    }
+
+    @Override
+    public String toPrometheus() {
+        StringBuilder text = new StringBuilder();
+        counter(text, "gomoku_searches_total", "Finished Minimax searches", getSearches());
+        counter(text, "gomoku_search_nodes_total", "Nodes searched", getNodes());
+        counter(text, "gomoku_search_quiescence_nodes_total", "Nodes searched by the quiescence search",
+                getQuiescenceNodes());
+        counter(text, "gomoku_search_evaluations_total", "Leaf positions evaluated", getEvaluations());
+        counter(text, "gomoku_search_vcf_nodes_total", "Positions searched by the VCF solver", getVcfNodes());
+        counter(text, "gomoku_search_tt_probes_total", "Transposition table probes", getTableProbes());
+        counter(text, "gomoku_search_tt_hits_total", "Transposition table probes that found their position",
+                getTableHits());
+        text.append("# HELP gomoku_search_cutoffs_total Beta cutoffs by ply\n");
+        text.append("# TYPE gomoku_search_cutoffs_total counter\n");
+        for (int ply = 0; ply < SearchStats.MAX_PLY; ply++) {
+            long count = cutoffs.get(ply);
+            if (count != 0) {
+                text.append("gomoku_search_cutoffs_total{ply=\"").append(ply).append("\"} ").append(count)
+                        .append('\n');
+            }
+        }
+        gauge(text, "gomoku_search_effective_branching_factor",
+                "Average effective branching factor of the searches", getAverageEffectiveBranchingFactor());
+        gauge(text, "gomoku_search_depth", "Average depth reached by the searches", getAverageDepth());
+        latency.append(text, "gomoku_search_latency_seconds", "Time per search, including the VCF solver");
+        iterations.append(text, "gomoku_search_iteration_seconds", "Time per iterative deepening iteration");
+        gauge(text, "gomoku_search_latency_max_seconds", "Longest search", getMaxLatencyMillis() / 1000);
+        gauge(text, "gomoku_search_iteration_max_seconds", "Longest iteration", getMaxIterationMillis() / 1000);
+        return text.toString();
+    }
+
+    private static void counter(StringBuilder text, String name, String help, long value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" counter\n");
+        text.append(name).append(' ').append(value).append('\n');
+    }
+
+    private static void gauge(StringBuilder text, String name, String help, double value) {
+        text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+        text.append("# TYPE ").append(name).append(" gauge\n");
+        text.append(name).append(' ').append(String.format(Locale.ROOT, "%.4f", value)).append('\n');
+    }
+
+    // A histogram of durations with fixed buckets, safe to record into from several threads
+    private static final class Histogram {
+        private final AtomicLongArray counts = new AtomicLongArray(LATENCY_BOUNDS_MILLIS.length + 1);
+        private final LongAdder count = new LongAdder();
+        private final LongAdder sumNanos = new LongAdder();
+        private final LongAccumulator maxNanos = new LongAccumulator(Long::max, 0);
+
+        void record(long nanos) {
+            int bucket = 0;
+            while (bucket < LATENCY_BOUNDS_MILLIS.length && nanos > LATENCY_BOUNDS_MILLIS[bucket] * 1_000_000) {
+                bucket++;
+            }
+            counts.incrementAndGet(bucket);
+            count.increment();
+            sumNanos.add(nanos);
+            maxNanos.accumulate(nanos);
+        }
+
+        // Returns the count of every bucket, the last one counting the durations above the largest bound
+        long[] counts() {
+            long[] snapshot = new long[counts.length()];
+            for (int bucket = 0; bucket < snapshot.length; bucket++) {
+                snapshot[bucket] = counts.get(bucket);
+            }
+            return snapshot;
+        }
+
+        double maxMillis() {
+            return maxNanos.get() / 1e6;
+        }
+
+        double mean() {
+            long n = count.sum();
+            return n == 0 ? 0 : (double) sumNanos.sum() / n;
+        }
+
+        // Returns the upper bound of the bucket holding the percentile; in the last bucket, which has no bound, the
+        // longest duration recorded
+        double percentileMillis(int percent) {
+            long n = count.sum();
+            if (n == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(percent / 100.0 * n);
+            long seen = 0;
+            for (int bucket = 0; bucket < LATENCY_BOUNDS_MILLIS.length; bucket++) {
+                seen += counts.get(bucket);
+                if (seen >= rank) {
+                    return LATENCY_BOUNDS_MILLIS[bucket];
+                }
+            }
+            return maxMillis();
+        }
+
+        void append(StringBuilder text, String name, String help) {
+            text.append("# HELP ").append(name).append(' ').append(help).append('\n');
+            text.append("# TYPE ").append(name).append(" histogram\n");
+            long cumulative = 0;
+            for (int bucket = 0; bucket < LATENCY_BOUNDS_MILLIS.length; bucket++) {
+                cumulative += counts.get(bucket);
+                text.append(name).append("_bucket{le=\"")
+                        .append(String.format(Locale.ROOT, "%.3f", LATENCY_BOUNDS_MILLIS[bucket] / 1000.0))
+                        .append("\"} ").append(cumulative).append('\n');
+            }
+            cumulative += counts.get(LATENCY_BOUNDS_MILLIS.length);
+            text.append(name).append("_bucket{le=\"+Inf\"} ").append(cumulative).append('\n');
+            text.append(name).append("_sum ").append(String.format(Locale.ROOT, "%.6f", sumNanos.sum() / 1e9))
+                    .append('\n');
+            text.append(name).append("_count ").append(cumulative).append('\n');
+        }
+    }
+}
@@ -0,0 +1,55 @@
+/**
+ * The JMX view of the {@link SearchMetrics} registry, registered as {@code Gomoku:type=SearchMetrics}. It holds the
+ * same data as the Prometheus text: the histograms are arrays of bucket counts, with the bounds in
+ * {@link #getHistogramBoundsMillis()} and a last bucket for the durations above the largest bound.
+ */
+public interface SearchMetricsMBean {
+    long getSearches();
+
+    long getNodes();
+
+    long getQuiescenceNodes();
+
+    long getEvaluations();
+
+    long getVcfNodes();
+
+    long getTableProbes();
+
+    long getTableHits();
+
+    double getTableHitRate();
+
+    double getAverageEffectiveBranchingFactor();
+
+    double getAverageDepth();
+
+    double getMeanLatencyMillis();
+
+    double getLatencyP50Millis();
+
+    double getLatencyP99Millis();
+
+    double getMaxLatencyMillis();
+
+    // Returns the beta cutoffs summed over all searches, indexed by ply
+    long[] getCutoffsByPly();
+
+    // Returns the upper bounds of the histogram buckets, shared by both histograms
+    long[] getHistogramBoundsMillis();
+
+    // Returns the searches per latency bucket
+    long[] getLatencyHistogram();
+
+    // Returns the iterative deepening iterations per duration bucket
+    long[] getIterationHistogram();
+
+    long getIterations();
+
+    double getMeanIterationMillis();
+
+    double getMaxIterationMillis();
+
+    // Returns all metrics in the Prometheus text format
+    String toPrometheus();
+}
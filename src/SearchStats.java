@@ -0,0 +1,134 @@
+/**
+ * Statistics of one Minimax search: nodes, quiescence nodes, leaf evaluations, transposition table probes and hits,
+ * beta cutoffs per ply, and the node count and time of every finished iteration.
+ * <p>
+ * Each search worker counts into its own instance with plain field increments, so counting costs the hot path no
+ * synchronization. When the search is over, the workers' statistics are added up with {@link #add(SearchStats)} and
+ * recorded once in the {@link SearchMetrics} registry.
+ */
+public class SearchStats {
+    // Deepest ply and iteration that are recorded
+    public static final int MAX_PLY = MoveGenerator.MAX_PLY;
+
+    long nodes;
+    long quiescenceNodes; // Nodes of the quiescence search below the horizon, included in nodes
+    long evaluations;
+    long tableProbes;
+    long tableHits;
+    long vcfNodes;
+    final long[] cutoffs = new long[MAX_PLY]; // Beta cutoffs by ply
+
+    // Iterations of the main worker: depth d's total node count and duration, 0 if it did not finish
+    private final long[] iterationNodes = new long[MAX_PLY + 1];
+    private final long[] iterationNanos = new long[MAX_PLY + 1];
+    private int depthReached;
+    private long elapsedNanos;
+
+    public long getNodes() {
+        return nodes;
+    }
+
+    public long getQuiescenceNodes() {
+        return quiescenceNodes;
+    }
+
+    public long getEvaluations() {
+        return evaluations;
+    }
+
+    public long getTableProbes() {
+        return tableProbes;
+    }
+
+    public long getTableHits() {
+        return tableHits;
+    }
+
+    public long getVcfNodes() {
+        return vcfNodes;
+    }
+
+    // Returns the beta cutoffs at a ply
+    public long getCutoffs(int ply) {
+        return ply < MAX_PLY ? cutoffs[ply] : 0;
+    }
+
+    public int getDepthReached() {
+        return depthReached;
+    }
+
+    // Returns the wall-clock time of the whole search, including the VCF solver, in nanoseconds
+    public long getElapsedNanos() {
+        return elapsedNanos;
+    }
+
+    // Returns the nanoseconds the iteration of a depth took, or 0 if it did not finish
+    public long getIterationNanos(int depth) {
+        return depth <= MAX_PLY ? iterationNanos[depth] : 0;
+    }
+
+    // Returns the fraction of transposition table probes that found their position
+    public double getTableHitRate() {
+        return tableProbes == 0 ? 0 : (double) tableHits / tableProbes;
+    }
+
+    /**
+     * Returns the effective branching factor: how many times more nodes the deepest finished iteration searched
+     * than the one before it.
+     *
+     * @return the factor, or 0 if fewer than two iterations finished
+     */
+    public double getEffectiveBranchingFactor() {
+        int depth = depthReached;
+        if (depth < 2 || iterationNodes[depth - 1] == 0) {
+            return 0;
+        }
+        return (double) iterationNodes[depth] / iterationNodes[depth - 1];
+    }
+
+    // Records a finished iteration: its depth, the nodes it searched and its duration
+    void recordIteration(int depth, long nodes, long nanos) {
+        if (depth <= MAX_PLY) {
+            iterationNodes[depth] = nodes;
+            iterationNanos[depth] = nanos;
+        }
+        depthReached = Math.max(depthReached, depth);
+    }
+
+    // Counts a beta cutoff at a ply
+    void recordCutoff(int ply) {
+        if (ply < MAX_PLY) {
+            cutoffs[ply]++;
+        }
+    }
+
+    void setElapsedNanos(long elapsedNanos) {
+        this.elapsedNanos = elapsedNanos;
+    }
+
+    /**
+     * Adds the counters of another worker of the same search. The iterations are not added: they are the main
+     * worker's, since the helpers search other depths at the same time.
+     *
+     * @param other the other worker's statistics
+     */
+    public void add(SearchStats other) {
+        nodes += other.nodes;
+        quiescenceNodes += other.quiescenceNodes;
+        evaluations += other.evaluations;
+        tableProbes += other.tableProbes;
+        tableHits += other.tableHits;
+        vcfNodes += other.vcfNodes;
+        for (int ply = 0; ply < MAX_PLY; ply++) {
+            cutoffs[ply] += other.cutoffs[ply];
+        }
+    }
+
+    @Override
+    public String toString() {
+        return String.format("Nodes: %d Quiescence nodes: %d Evaluations: %d VCF nodes: %d TT hit rate: %.1f%%"
+                        + " EBF: %.2f Depth: %d Time: %d ms", nodes, quiescenceNodes, evaluations, vcfNodes,
+                100 * getTableHitRate(),
+                getEffectiveBranchingFactor(), depthReached, elapsedNanos / 1_000_000);
+    }
+}
@@ -0,0 +1,458 @@
+import java.util.Arrays;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * One thread's share of a Minimax search.
+ * <p>
+ * A worker owns its copy of the board and its own node and evaluation counters, so several workers can search the
+ * same position at the same time. They only share the transposition table and a stop flag (Lazy SMP): the results
+ * one worker stores in the table let the others skip or reorder work.
+ * <p>
+ * The search is a negamax with int scores: every node scores the position for the side to move, and a child's
+ * score is negated on the way up. Moves after the first are searched with a null window around alpha (principal
+ * variation search) and only re-searched with the full window if they turn out better. Each iteration after the
+ * first starts with an aspiration window around the previous iteration's score. The principal variation is kept in
+ * preallocated per-ply arrays, so the search allocates nothing per node.
+ * <p>
+ * At the horizon, a quiescence search plays on while a threat is pending: a side with a four wins, a side facing
+ * a four has to block it, a side with an open three makes it an open four, and a side facing an open three blocks
+ * it. Only those moves are searched, up to a fixed number of nodes per horizon position, so that the evaluation is
+ * not taken in the middle of a forced sequence.
+ */
+public class SearchWorker {
+    private final Board board; // This worker's private copy of the position
+    private final TranspositionTable table; // Shared by all workers of the search
+    private final AtomicBoolean stop; // Shared by all workers of the search; set when the search is over
+    private final TranspositionTable.Entry entry = new TranspositionTable.Entry();
+    private final MoveGenerator moveGenerator; // Preallocated move buffers, one per ply
+    private final MoveOrderer moveOrderer; // Threats, killers and history of this worker
+    private final int id; // 0 for the main worker, 1.. for helpers
+
+    // Budget of the running search
+    private long deadline = Long.MAX_VALUE; // Wall-clock time in milliseconds at which the search stops
+    private long nodeLimit; // Maximum number of searched nodes, 0 for no limit
+    private boolean abortable; // Whether the running iteration may be stopped by the budget
+    private boolean aborted; // Set once the budget has run out; the running iteration's result is then discarded
+
+    // Counters, only ever touched by this worker's thread
+    private final SearchStats stats = new SearchStats();
+
+    // Scores: a five is worth WIN_SCORE less the plies to reach it, so that quicker wins score higher
+    private static final int WIN_SCORE = Minimax.getWinningScore();
+    private static final int INFINITY = WIN_SCORE + 1;
+    private static final int MAX_PLY = MoveGenerator.MAX_PLY;
+    private static final int WIN_BOUND = WIN_SCORE - MAX_PLY; // Scores beyond this are wins or losses
+
+    // Aspiration window: half its initial width, and the first depth that uses one
+    private static final int ASPIRATION_WINDOW = 50;
+    private static final int ASPIRATION_MIN_DEPTH = 3;
+
+    // Most quiescence nodes searched below one horizon position; past it, positions are evaluated as they are
+    private static final int QUIESCENCE_NODE_LIMIT = 32;
+    private int quiescenceNodesLeft;
+    private boolean leafExtended; // Set when a quiescence search searched moves, so its score depends on the window
+
+    // Principal variation: pv[ply] holds the best line from ply on, pvLength[ply] its length
+    private final int[][] pv = new int[MAX_PLY + 1][MAX_PLY + 1];
+    private final int[] pvLength = new int[MAX_PLY + 1];
+
+    // Result of the last finished iteration
+    private int bestMove = TranspositionTable.NO_MOVE;
+    private int bestScore;
+    private int[] principalVariation = new int[0];
+
+    public SearchWorker(Board board, TranspositionTable table, AtomicBoolean stop, int id, int moveRadius) {
+        this.board = new Board(board);
+        this.moveGenerator = new MoveGenerator(board.getBoardSize(), moveRadius);
+        this.moveOrderer = new MoveOrderer(board.getBoardSize());
+        this.table = table;
+        this.stop = stop;
+        this.id = id;
+    }
+
+    // Sets the wall-clock deadline (in milliseconds, as System.currentTimeMillis) and the node limit (0: no limit)
+    public void setBudget(long deadline, long nodeLimit) {
+        this.deadline = deadline;
+        this.nodeLimit = nodeLimit;
+    }
+
+    public long getNodeCount() {
+        return stats.nodes;
+    }
+
+    public long getEvaluationCount() {
+        return stats.evaluations;
+    }
+
+    public int getDepthReached() {
+        return stats.getDepthReached();
+    }
+
+    // Returns this worker's statistics; read them after the search is over
+    public SearchStats getStats() {
+        return stats;
+    }
+
+    // Returns the best move of the last finished iteration as row * boardSize + column, or NO_MOVE
+    public int getBestMove() {
+        return bestMove;
+    }
+
+    // Returns the score of the last finished iteration, for white, who is to move at the root
+    public int getBestScore() {
+        return bestScore;
+    }
+
+    // Returns the principal variation of the last finished iteration, as moves from the root
+    public int[] getPrincipalVariation() {
+        return principalVariation.clone();
+    }
+
+    /**
+     * Iterative deepening: searches depth 1, 2, 3... up to maxDepth until the budget runs out or the search is
+     * stopped. The main worker always finishes its first iteration, so that there is a move to return. Helpers start
+     * at alternating depths, so that they do not all search the same tree in lockstep.
+     *
+     * @param maxDepth        the deepest iteration
+     * @param timeLimitMillis the wall-clock budget the deadline was computed from, or 0
+     * @return the best move of the last finished iteration as row * boardSize + column, or NO_MOVE if none finished
+     * or white has no move
+     */
+    public int iterativeDeepening(int maxDepth, long timeLimitMillis) {
+        long startTime = System.currentTimeMillis();
+        boolean finishedOne = false;
+        for (int depth = 1 + id % 2; depth <= maxDepth; depth++) {
+            aborted = false;
+            abortable = id > 0 || finishedOne;
+            long iterationStart = System.nanoTime();
+            long nodesBefore = stats.nodes;
+            int score = finishedOne ? aspirationSearch(depth, bestScore)
+                    : negamax(depth, 0, false, -INFINITY, INFINITY);
+            if (aborted) {
+                break;
+            }
+            finishIteration(score);
+            finishedOne = true;
+            stats.recordIteration(depth, stats.nodes - nodesBefore, System.nanoTime() - iterationStart);
+            // The next iteration takes several times longer than this one, so do not start it if it cannot finish
+            if (id == 0 && timeLimitMillis > 0 && System.currentTimeMillis() - startTime > timeLimitMillis / 2) {
+                break;
+            }
+        }
+        return bestMove;
+    }
+
+    /**
+     * Runs a single search of the given depth from the root, without a budget. Used by the benchmarks to time the
+     * search at fixed depths.
+     *
+     * @param depth the depth to search
+     * @return the score for white
+     */
+    int search(int depth) {
+        aborted = false;
+        abortable = false;
+        int score = negamax(depth, 0, false, -INFINITY, INFINITY);
+        finishIteration(score);
+        return score;
+    }
+
+    /**
+     * Runs a single search of the given depth from the root, which stops early when the stop flag is set. Used for
+     * pondering, where any iteration may be cut short by the opponent's move.
+     *
+     * @param depth the depth to search
+     * @return whether the search finished
+     */
+    boolean searchUntilStopped(int depth) {
+        aborted = false;
+        abortable = true;
+        int score = negamax(depth, 0, false, -INFINITY, INFINITY);
+        if (aborted) {
+            return false;
+        }
+        finishIteration(score);
+        return true;
+    }
+
+    // Searches with a narrow window around the previous score, widening it on the side that failed until the
+    // score falls inside
+    private int aspirationSearch(int depth, int previousScore) {
+        if (depth < ASPIRATION_MIN_DEPTH || Math.abs(previousScore) >= WIN_BOUND) {
+            return negamax(depth, 0, false, -INFINITY, INFINITY);
+        }
+        int delta = ASPIRATION_WINDOW;
+        int alpha = previousScore - delta;
+        int beta = previousScore + delta;
+        while (true) {
+            int score = negamax(depth, 0, false, alpha, beta);
+            if (aborted || (score > alpha && score < beta)) {
+                return score;
+            }
+            delta *= 4;
+            if (score <= alpha) {
+                alpha = delta >= WIN_BOUND ? -INFINITY : Math.max(-INFINITY, previousScore - delta);
+            } else {
+                beta = delta >= WIN_BOUND ? INFINITY : Math.min(INFINITY, previousScore + delta);
+            }
+        }
+    }
+
+    // Keeps the result of a finished iteration
+    private void finishIteration(int score) {
+        bestScore = score;
+        bestMove = pvLength[0] > 0 ? pv[0][0] : TranspositionTable.NO_MOVE;
+        principalVariation = Arrays.copyOf(pv[0], pvLength[0]);
+    }
+
+    // Counts a searched node and checks whether the budget of the current iteration has run out
+    private boolean outOfBudget() {
+        long nodeCount = ++stats.nodes;
+        if (!abortable || aborted) {
+            return aborted;
+        }
+        if (nodeLimit > 0 && nodeCount >= nodeLimit) {
+            aborted = true;
+        } else if ((nodeCount & 1023) == 0 && (stop.get() || System.currentTimeMillis() >= deadline)) {
+            aborted = true;
+        }
+        return aborted;
+    }
+
+    // Evaluates the worker's board for the side to move, counting the evaluation
+    private int evaluate(boolean blacksTurn) {
+        stats.evaluations++;
+        int forWhite = Minimax.evaluateBoardForWhite(board, blacksTurn);
+        return blacksTurn ? -forWhite : forWhite;
+    }
+
+    /**
+     * Negamax with alpha-beta pruning, principal variation search and a transposition table.
+     *
+     * @param depth      the remaining depth
+     * @param ply        the distance from the root
+     * @param blacksTurn whether black is to move
+     * @param alpha      the score the side to move is already sure of
+     * @param beta       the score the opponent is already sure of
+     * @return the score for the side to move; pv[ply] holds the best line found
+     */
+    private int negamax(int depth, int ply, boolean blacksTurn, int alpha, int beta) {
+        pvLength[ply] = 0;
+        // If the budget has run out, unwind; the caller discards the result
+        if (outOfBudget()) {
+            return 0;
+        }
+        if (ply >= MAX_PLY) {
+            return evaluate(blacksTurn);
+        }
+        // If the depth reaches zero, play out the pending threats and evaluate
+        if (depth == 0) {
+            quiescenceNodesLeft = QUIESCENCE_NODE_LIMIT;
+            return quiescence(ply, blacksTurn, alpha, beta);
+        }
+        // Look the position up in the transposition table
+        long key = board.getHash() ^ Zobrist.sideToMove(blacksTurn);
+        boolean found = table.probe(key, entry);
+        stats.tableProbes++;
+        int tableMove = TranspositionTable.NO_MOVE;
+        if (found) {
+            stats.tableHits++;
+            tableMove = entry.getMove();
+            // The root needs a move to return, so it only takes a table result that has one
+            if (entry.getDepth() >= depth && (ply > 0 || tableMove != TranspositionTable.NO_MOVE)) {
+                int score = fromTable(entry.getScore(), ply);
+                int bound = entry.getBound();
+                if (bound == TranspositionTable.EXACT
+                        || (bound == TranspositionTable.LOWER_BOUND && score >= beta)
+                        || (bound == TranspositionTable.UPPER_BOUND && score <= alpha)) {
+                    if (tableMove != TranspositionTable.NO_MOVE) {
+                        pv[ply][0] = tableMove;
+                        pvLength[ply] = 1;
+                    }
+                    return score;
+                }
+            }
+        }
+        // If there are no possible moves, evaluate the board and return
+        int moveCount = moveGenerator.generate(board, ply);
+        if (moveCount == 0) {
+            return evaluate(blacksTurn);
+        }
+        // Order the moves: the table's best move first, so that the previous best line is searched first, then
+        // wins, blocks and threats, then killers, then by history
+        int[] moves = moveGenerator.getMoves(ply);
+        moveOrderer.order(board.getBoardMatrix(), moves, moveGenerator.getScores(ply), moveCount, ply, blacksTurn,
+                tableMove, depth > 1);
+        int boardSize = board.getBoardSize();
+        int alphaOrig = alpha;
+        int nodeScore = -INFINITY;
+        int nodeMove = TranspositionTable.NO_MOVE;
+        for (int m = 0; m < moveCount; m++) {
+            int row = moves[m] / boardSize;
+            int col = moves[m] % boardSize;
+            board.addPieceNoGUI(col, row, blacksTurn);
+            int score;
+            // A five scores WIN_SCORE in the pattern table, so the running score shows it without a line scan
+            if (Minimax.getScore(board, blacksTurn, !blacksTurn) >= WIN_SCORE) {
+                // The move wins; nothing below it needs searching
+                pvLength[ply + 1] = 0;
+                score = WIN_SCORE - (ply + 1);
+            } else if (m == 0) {
+                score = -negamax(depth - 1, ply + 1, !blacksTurn, -beta, -alpha);
+            } else {
+                // Prove with a null window that the move is no better than alpha; search it fully if it is
+                leafExtended = false;
+                score = -negamax(depth - 1, ply + 1, !blacksTurn, -alpha - 1, -alpha);
+                // A quiet leaf's score is exact whatever the window, so it needs no second search
+                if (score > alpha && score < beta && (depth > 1 || leafExtended) && !aborted) {
+                    score = -negamax(depth - 1, ply + 1, !blacksTurn, -beta, -alpha);
+                }
+            }
+            board.removePiece(col, row);
+            if (aborted) {
+                return 0;
+            }
+            if (score > nodeScore) {
+                nodeScore = score;
+                nodeMove = moves[m];
+                if (score > alpha) {
+                    alpha = score;
+                    // The move's line becomes this node's principal variation
+                    pv[ply][0] = moves[m];
+                    System.arraycopy(pv[ply + 1], 0, pv[ply], 1, pvLength[ply + 1]);
+                    pvLength[ply] = pvLength[ply + 1] + 1;
+                }
+            }
+            if (alpha >= beta) {
+                moveOrderer.recordCutoff(ply, moves[m], depth, blacksTurn);
+                stats.recordCutoff(ply);
+                break;
+            }
+        }
+        // Store the result, recording whether it is exact or only a bound
+        int bound = TranspositionTable.EXACT;
+        if (nodeScore <= alphaOrig) {
+            bound = TranspositionTable.UPPER_BOUND;
+        } else if (nodeScore >= beta) {
+            bound = TranspositionTable.LOWER_BOUND;
+        }
+        table.store(key, depth, bound, toTable(nodeScore, ply), nodeMove);
+        return nodeScore;
+    }
+
+    /**
+     * Quiescence search: searches only the moves of pending threats, so that the horizon does not hide a four or an
+     * open three. Threats are read from the pattern totals of the board, so a quiet position costs no more than
+     * its evaluation.
+     *
+     * @param ply        the distance from the root
+     * @param blacksTurn whether black is to move
+     * @param alpha      the score the side to move is already sure of
+     * @param beta       the score the opponent is already sure of
+     * @return the score for the side to move; pv[ply] holds the forcing line found
+     */
+    private int quiescence(int ply, boolean blacksTurn, int alpha, int beta) {
+        pvLength[ply] = 0;
+        if (outOfBudget()) {
+            return 0;
+        }
+        stats.quiescenceNodes++;
+        // A four completes five on the next move
+        int own = Minimax.getScore(board, blacksTurn, blacksTurn);
+        if (own >= Minimax.FOUR_SCORE) {
+            return WIN_SCORE - (ply + 1);
+        }
+        int opponent = Minimax.getScore(board, !blacksTurn, !blacksTurn);
+        boolean forced = opponent >= Minimax.FOUR_SCORE; // The opponent threatens five
+        boolean threatened = opponent >= Minimax.OPEN_THREE_SCORE; // The opponent threatens an open four
+        boolean attacking = own >= Minimax.OPEN_THREE_SCORE; // The side to move can make an open four
+        if ((!threatened && !attacking) || quiescenceNodesLeft <= 0 || ply >= MAX_PLY - 1) {
+            return evaluate(blacksTurn);
+        }
+        quiescenceNodesLeft--;
+        // Unless there is a threat to answer, the side to move may stand on the evaluation
+        int nodeScore = -INFINITY;
+        if (!threatened) {
+            nodeScore = evaluate(blacksTurn);
+            if (nodeScore >= beta) {
+                return nodeScore;
+            }
+            alpha = Math.max(alpha, nodeScore);
+        }
+        // Facing a four, the only move is the cell that blocks it. Otherwise the side to move makes an open four
+        // if it can, and if not, it takes the cell where the opponent's open three would become one. The cells are
+        // looked for only on the lines that hold the threat.
+        int color = blacksTurn ? 2 : 1;
+        int[][] matrix = board.getBoardMatrix();
+        int boardSize = board.getBoardSize();
+        int[] moves = moveGenerator.getMoves(ply);
+        IncrementalEvaluator evaluator = board.getEvaluator();
+        int candidates;
+        if (forced) {
+            candidates = evaluator.threatCells(!blacksTurn, Minimax.FOUR_SCORE, moves);
+        } else {
+            candidates = evaluator.threatCells(attacking ? blacksTurn : !blacksTurn, Minimax.OPEN_THREE_SCORE, moves);
+        }
+        int moveCount = 0;
+        for (int m = 0; m < candidates; m++) {
+            int row = moves[m] / boardSize;
+            int col = moves[m] % boardSize;
+            boolean keep;
+            if (forced) {
+                keep = Threats.threatAt(matrix, row, col, 3 - color) == Threats.FIVE;
+            } else {
+                keep = Threats.threatAt(matrix, row, col, attacking ? color : 3 - color) >= Threats.OPEN_FOUR;
+            }
+            if (keep) {
+                moves[moveCount++] = moves[m];
+            }
+        }
+        // Two cells complete the opponent's five, and only one can be blocked
+        if (forced && moveCount >= 2) {
+            return -(WIN_SCORE - (ply + 2));
+        }
+        if (moveCount == 0) {
+            return threatened ? evaluate(blacksTurn) : nodeScore;
+        }
+        leafExtended = true;
+        for (int m = 0; m < moveCount; m++) {
+            int row = moves[m] / boardSize;
+            int col = moves[m] % boardSize;
+            board.addPieceNoGUI(col, row, blacksTurn);
+            int score = -quiescence(ply + 1, !blacksTurn, -beta, -alpha);
+            board.removePiece(col, row);
+            if (aborted) {
+                return 0;
+            }
+            if (score > nodeScore) {
+                nodeScore = score;
+                if (score > alpha) {
+                    alpha = score;
+                    pv[ply][0] = moves[m];
+                    System.arraycopy(pv[ply + 1], 0, pv[ply], 1, pvLength[ply + 1]);
+                    pvLength[ply] = pvLength[ply + 1] + 1;
+                }
+            }
+            if (alpha >= beta) {
+                break;
+            }
+        }
+        return nodeScore;
+    }
+
+    // Win scores count plies from the root; the table stores them counted from the node, so they stay valid when
+    // the node is reached at another ply
+    private static int toTable(int score, int ply) {
+        if (score >= WIN_BOUND) {
+            return score + ply;
+        }
+        return score <= -WIN_BOUND ? score - ply : score;
+    }
+
+    private static int fromTable(int score, int ply) {
+        if (score >= WIN_BOUND) {
+            return score - ply;
+        }
+        return score <= -WIN_BOUND ? score + ply : score;
+    }
+}
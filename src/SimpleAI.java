@@ -16,8 +16,9 @@ public class SimpleAI {
     public void makeMove() {
         for (int i = 0; i < board.getBoardMatrix().length; i++) {
             for (int j = 0; j < board.getBoardMatrix().length; j++) {
-                if (checkThreeInRow(i, j, 3, myColor == WHITE ? BLACK : WHITE)) {
-                    board.getBoardMatrix()[i][j] = myColor;
+                int[] block = findThreeInRowBlock(i, j, 3, myColor == WHITE ? BLACK : WHITE);
+                if (block != null) {
+                    board.addPieceNoGUI(block[1], block[0], myColor == BLACK);
                     return;
                 }
             }
@@ -25,27 +26,38 @@ public class SimpleAI {
         makeRandomMove();
     }
 
-    private boolean checkThreeInRow(int x, int y, int length, int color) {
+    // Looks for a row of stones of the color starting at (x, y); returns an empty cell at one of its ends, or null
+    private int[] findThreeInRowBlock(int x, int y, int length, int color) {
         int[][] directions = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
         for (int[] dir : directions) {
             int count = 0;
             for (int i = 0; i < length; i++) {
                 int dx = x + dir[0] * i;
                 int dy = y + dir[1] * i;
-                if (dx < 0 || dx >= board.getBoardMatrix().length || dy < 0 || dy >= board.getBoardMatrix().length) {
-                    break;
-                }
-                if (board.getBoardMatrix()[dx][dy] == color) {
+                if (isOnBoard(dx, dy) && board.getBoardMatrix()[dx][dy] == color) {
                     count++;
                 } else {
                     break;
                 }
             }
             if (count == length) {
-                return true;
+                if (isEmptyCell(x + dir[0] * length, y + dir[1] * length)) {
+                    return new int[]{x + dir[0] * length, y + dir[1] * length};
+                }
+                if (isEmptyCell(x - dir[0], y - dir[1])) {
+                    return new int[]{x - dir[0], y - dir[1]};
+                }
             }
         }
-        return false;
+        return null;
+    }
+
+    private boolean isOnBoard(int x, int y) {
+        return x >= 0 && x < board.getBoardMatrix().length && y >= 0 && y < board.getBoardMatrix().length;
+    }
+
+    private boolean isEmptyCell(int x, int y) {
+        return isOnBoard(x, y) && board.getBoardMatrix()[x][y] == EMPTY;
     }
 
     private void makeRandomMove() {
@@ -54,7 +66,7 @@ public class SimpleAI {
             int x = random.nextInt(board.getBoardMatrix().length);
             int y = random.nextInt(board.getBoardMatrix().length);
             if (board.getBoardMatrix()[x][y] == EMPTY) {
-                board.getBoardMatrix()[x][y] = myColor;
+                board.addPieceNoGUI(y, x, myColor == BLACK);
                 break;
             }
         }
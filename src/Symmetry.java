@@ -0,0 +1,74 @@
+/**
+ * The 8 symmetries of a square board: the 4 rotations, and the 4 reflections (a mirror followed by a rotation).
+ * Gomoku's rules look the same under all of them, so a position and its rotated or mirrored copies have the same
+ * best moves, mapped through the symmetry.
+ * <p>
+ * Symmetry s maps a cell by mirroring the column if s is 4 or more, then rotating a quarter turn clockwise s % 4
+ * times. The canonical form of a position is the symmetric copy with the smallest Zobrist hash; a table keyed on it
+ * stores one entry for all 8 copies. A board keeps the hashes of its symmetric copies up to date and finds its
+ * canonical form, see {@link Board#getCanonicalSymmetry()}.
+ */
+public final class Symmetry {
+    public static final int COUNT = 8;
+    public static final int IDENTITY = 0;
+
+    // Per board size, created on first use: the cell every symmetry maps each cell to
+    private static final int[][][] TABLES = new int[Zobrist.MAX_BOARD_SIZE + 1][][];
+
+    private Symmetry() {
+    }
+
+    /**
+     * Returns the cell mapping of every symmetry for a board size, so that a board can update its symmetric hashes
+     * with a lookup per symmetry.
+     *
+     * @param boardSize the side of the board
+     * @return table[s][cell] is transform(s, cell, boardSize); shared, do not modify
+     */
+    public static synchronized int[][] table(int boardSize) {
+        int[][] table = TABLES[boardSize];
+        if (table == null) {
+            table = new int[COUNT][boardSize * boardSize];
+            for (int s = 0; s < COUNT; s++) {
+                for (int cell = 0; cell < boardSize * boardSize; cell++) {
+                    table[s][cell] = transform(s, cell, boardSize);
+                }
+            }
+            TABLES[boardSize] = table;
+        }
+        return table;
+    }
+
+    /**
+     * Maps a cell through a symmetry.
+     *
+     * @param symmetry  the symmetry, 0 to 7
+     * @param cell      the cell as row * boardSize + column
+     * @param boardSize the side of the board
+     * @return the mapped cell as row * boardSize + column
+     */
+    public static int transform(int symmetry, int cell, int boardSize) {
+        int row = cell / boardSize;
+        int col = cell % boardSize;
+        if (symmetry >= 4) {
+            col = boardSize - 1 - col;
+        }
+        for (int turn = 0; turn < (symmetry & 3); turn++) {
+            int rotated = boardSize - 1 - row;
+            row = col;
+            col = rotated;
+        }
+        return row * boardSize + col;
+    }
+
+    /**
+     * Returns the symmetry that undoes another: rotations are undone by the opposite rotation, reflections by
+     * themselves.
+     *
+     * @param symmetry the symmetry, 0 to 7
+     * @return the inverse symmetry
+     */
+    public static int inverse(int symmetry) {
+        return symmetry < 4 ? (4 - symmetry) & 3 : symmetry;
+    }
+}
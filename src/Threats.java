@@ -0,0 +1,160 @@
+/**
+ * Classifies the threat a move creates along the lines through its cell: five in a row, an open four (two ways to
+ * complete five), a four (one way), or an open three (one move away from an open four).
+ * <p>
+ * Each line is read as a window of the four cells on either side of the move. Every cell is empty, own, or blocked
+ * (an opponent stone or off the board), so a window is one of 3^8 patterns; the threat of every pattern is worked
+ * out once when the class is loaded, and classifying a move is then four table lookups.
+ */
+public final class Threats {
+    // Threat levels, from weakest to strongest
+    public static final int NONE = 0;
+    public static final int OPEN_THREE = 1;
+    public static final int FOUR = 2;
+    public static final int OPEN_FOUR = 3;
+    public static final int FIVE = 4;
+
+    // Cell states in a window
+    private static final int EMPTY = 0;
+    private static final int OWN = 1;
+    private static final int BLOCKED = 2;
+
+    private static final int REACH = 4; // Cells read on each side of the move
+    private static final int WINDOW = 2 * REACH + 1;
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+
+    // Threat level of every window, indexed by the base-3 code of the 8 cells around the move
+    private static final byte[] LEVELS = new byte[6561];
+
+    static {
+        int[] cells = new int[WINDOW];
+        for (int code = 0; code < LEVELS.length; code++) {
+            int rest = code;
+            for (int i = 0; i < WINDOW; i++) {
+                if (i == REACH) {
+                    cells[i] = OWN;
+                } else {
+                    cells[i] = rest % 3;
+                    rest /= 3;
+                }
+            }
+            LEVELS[code] = (byte) classify(cells);
+        }
+    }
+
+    private Threats() {
+    }
+
+    /**
+     * Returns the strongest threat that placing a stone of the given color on an empty cell creates.
+     *
+     * @param matrix the board matrix (0: empty, 1: white, 2: black)
+     * @param row    the row of the move
+     * @param col    the column of the move
+     * @param color  1 for white, 2 for black
+     * @return NONE, OPEN_THREE, FOUR, OPEN_FOUR or FIVE
+     */
+    public static int threatAt(int[][] matrix, int row, int col, int color) {
+        int best = NONE;
+        for (int[] dir : DIRECTIONS) {
+            best = Math.max(best, LEVELS[windowCode(matrix, row, col, dir[0], dir[1], color)]);
+        }
+        return best;
+    }
+
+    /**
+     * Counts the lines through an empty cell on which placing a stone of the given color creates at least the
+     * given threat. Two or more lines make a double threat, such as a four-three.
+     *
+     * @param matrix   the board matrix (0: empty, 1: white, 2: black)
+     * @param row      the row of the move
+     * @param col      the column of the move
+     * @param color    1 for white, 2 for black
+     * @param minLevel the weakest threat to count
+     * @return the number of lines, 0 to 4
+     */
+    public static int countLines(int[][] matrix, int row, int col, int color, int minLevel) {
+        int lines = 0;
+        for (int[] dir : DIRECTIONS) {
+            if (LEVELS[windowCode(matrix, row, col, dir[0], dir[1], color)] >= minLevel) {
+                lines++;
+            }
+        }
+        return lines;
+    }
+
+    // Encodes the 8 cells around (row, col) along one direction in base 3
+    private static int windowCode(int[][] matrix, int row, int col, int dRow, int dCol, int color) {
+        int size = matrix.length;
+        int code = 0;
+        for (int i = WINDOW - 1; i >= 0; i--) {
+            if (i == REACH) {
+                continue;
+            }
+            int r = row + (i - REACH) * dRow;
+            int c = col + (i - REACH) * dCol;
+            int state;
+            if (r < 0 || r >= size || c < 0 || c >= size) {
+                state = BLOCKED;
+            } else if (matrix[r][c] == 0) {
+                state = EMPTY;
+            } else {
+                state = matrix[r][c] == color ? OWN : BLOCKED;
+            }
+            code = code * 3 + state;
+        }
+        return code;
+    }
+
+    // Works out the threat of a window whose center holds the move
+    private static int classify(int[] cells) {
+        if (hasFive(cells)) {
+            return FIVE;
+        }
+        int completions = countCompletions(cells);
+        if (completions >= 2) {
+            return OPEN_FOUR;
+        }
+        if (completions == 1) {
+            return FOUR;
+        }
+        for (int i = 0; i < WINDOW; i++) {
+            if (cells[i] == EMPTY) {
+                cells[i] = OWN;
+                int next = countCompletions(cells);
+                cells[i] = EMPTY;
+                if (next >= 2) {
+                    return OPEN_THREE;
+                }
+            }
+        }
+        return NONE;
+    }
+
+    // Counts the empty cells that would complete five in a row through the center
+    private static int countCompletions(int[] cells) {
+        int completions = 0;
+        for (int i = 0; i < WINDOW; i++) {
+            if (cells[i] == EMPTY) {
+                cells[i] = OWN;
+                if (hasFive(cells)) {
+                    completions++;
+                }
+                cells[i] = EMPTY;
+            }
+        }
+        return completions;
+    }
+
+    // Checks for five own stones in a row through the center
+    private static boolean hasFive(int[] cells) {
+        int run = 1;
+        for (int i = REACH - 1; i >= 0 && cells[i] == OWN; i--) {
+            run++;
+        }
+        for (int i = REACH + 1; i < WINDOW && cells[i] == OWN; i++) {
+            run++;
+        }
+        return run >= 5;
+    }
+}
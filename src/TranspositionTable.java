@@ -0,0 +1,171 @@
+/**
+ * Fixed-size, preallocated transposition table for the Minimax search.
+ * <p>
+ * Entries are indexed by the low bits of the Zobrist hash and hold the search depth, the bound type, the score and
+ * the best move found. All storage is allocated up front as parallel primitive arrays, so probing and storing never
+ * allocate.
+ * <p>
+ * The table can be shared by several search threads without locking. Every entry is written as three words and the
+ * stored key is the Zobrist hash XORed with the other two; an entry torn by a concurrent write therefore fails the
+ * key check and is treated as a miss.
+ */
+public class TranspositionTable {
+    // Bound types
+    public static final int EXACT = 0; // The score is the exact minimax value
+    public static final int LOWER_BOUND = 1; // The search failed high: the value is at least the score
+    public static final int UPPER_BOUND = 2; // The search failed low: the value is at most the score
+
+    // Returned by getMove when the entry has no best move
+    public static final int NO_MOVE = -1;
+
+    /**
+     * Decides whether a new entry may overwrite the one already stored in its slot.
+     */
+    public enum ReplacementPolicy {
+        // The newest entry always wins
+        ALWAYS_REPLACE,
+        // Keep the deeper entry, unless the stored one was written by an earlier search
+        DEPTH_PREFERRED
+    }
+
+    /**
+     * A copy of one table entry, filled by {@link #probe(long, Entry)}. Each search thread keeps its own.
+     */
+    public static final class Entry {
+        private int depth;
+        private int bound;
+        private int score;
+        private int move;
+
+        public int getDepth() {
+            return depth;
+        }
+
+        public int getBound() {
+            return bound;
+        }
+
+        public int getScore() {
+            return score;
+        }
+
+        // Returns the best move as row * boardSize + column, or NO_MOVE
+        public int getMove() {
+            return move;
+        }
+
+        // Fills the entry from another store of search results, such as the PositionCache
+        void set(int depth, int bound, int score, int move) {
+            this.depth = depth;
+            this.bound = bound;
+            this.score = score;
+            this.move = move;
+        }
+    }
+
+    // Layout of the info word: move (16 bits), depth (8 bits), bound (2 bits), generation (8 bits), used flag
+    private static final int MOVE_BITS = 16;
+    private static final int DEPTH_SHIFT = 16;
+    private static final int BOUND_SHIFT = 24;
+    private static final int GENERATION_SHIFT = 26;
+    private static final long USED = 1L << 34;
+
+    private final int mask;
+    private final ReplacementPolicy policy;
+    private final long[] checks; // Zobrist hash ^ score bits ^ info
+    private final long[] scores; // The score, sign-extended
+    private final long[] infos; // Packed move, depth, bound and generation
+    private volatile int generation;
+
+    /**
+     * Creates a table with 2^sizeBits entries.
+     *
+     * @param sizeBits log2 of the number of entries
+     * @param policy   the replacement policy
+     */
+    public TranspositionTable(int sizeBits, ReplacementPolicy policy) {
+        if (sizeBits < 1 || sizeBits > 28) {
+            throw new IllegalArgumentException("sizeBits must be between 1 and 28: " + sizeBits);
+        }
+        int size = 1 << sizeBits;
+        this.mask = size - 1;
+        this.policy = policy;
+        checks = new long[size];
+        scores = new long[size];
+        infos = new long[size];
+    }
+
+    // Removes all entries
+    public void clear() {
+        for (int i = 0; i < checks.length; i++) {
+            checks[i] = 0;
+            scores[i] = 0;
+            infos[i] = 0;
+        }
+        generation = 0;
+    }
+
+    // Marks the start of a new search, so that entries of earlier searches become preferred victims
+    public void newSearch() {
+        generation = (generation + 1) & 0xFF;
+    }
+
+    /**
+     * Looks up a position.
+     *
+     * @param key   the Zobrist hash of the position
+     * @param entry receives the entry if the position is in the table
+     * @return true if the position was found
+     */
+    public boolean probe(long key, Entry entry) {
+        int slot = (int) key & mask;
+        long info = infos[slot];
+        long scoreBits = scores[slot];
+        if ((info & USED) == 0 || (checks[slot] ^ scoreBits ^ info) != key) {
+            return false;
+        }
+        int move = (int) (info & ((1 << MOVE_BITS) - 1));
+        entry.move = move == (1 << MOVE_BITS) - 1 ? NO_MOVE : move;
+        entry.depth = (int) (info >>> DEPTH_SHIFT) & 0xFF;
+        entry.bound = (int) (info >>> BOUND_SHIFT) & 0x3;
+        entry.score = (int) scoreBits;
+        return true;
+    }
+
+    /**
+     * Stores the result of a search, subject to the replacement policy.
+     *
+     * @param key   the Zobrist hash of the position
+     * @param depth the remaining depth the position was searched to
+     * @param bound EXACT, LOWER_BOUND or UPPER_BOUND
+     * @param score the score found
+     * @param move  the best move as row * boardSize + column, or NO_MOVE
+     */
+    public void store(long key, int depth, int bound, int score, int move) {
+        int slot = (int) key & mask;
+        int currentGeneration = generation;
+        if (policy == ReplacementPolicy.DEPTH_PREFERRED) {
+            long oldInfo = infos[slot];
+            long oldKey = checks[slot] ^ scores[slot] ^ oldInfo;
+            if ((oldInfo & USED) != 0 && oldKey != key
+                    && ((oldInfo >>> GENERATION_SHIFT) & 0xFF) == currentGeneration
+                    && ((oldInfo >>> DEPTH_SHIFT) & 0xFF) > depth) {
+                return;
+            }
+        }
+        long info = USED
+                | ((long) currentGeneration << GENERATION_SHIFT)
+                | ((long) bound << BOUND_SHIFT)
+                | ((long) depth << DEPTH_SHIFT)
+                | (move & ((1L << MOVE_BITS) - 1));
+        long scoreBits = score;
+        checks[slot] = key ^ scoreBits ^ info;
+        scores[slot] = scoreBits;
+        infos[slot] = info;
+    }
+
+    // Returns the number of entries
+    public int capacity() {
+        return checks.length;
+    }
+}
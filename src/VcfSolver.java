@@ -0,0 +1,231 @@
+/**
+ * Threat-space solver for victory by continuous fours (VCF).
+ * <p>
+ * The attacker only plays moves that make a four, so every defender reply is forced: the defender has to take the
+ * one cell that would complete five. A line of such moves that ends in five in a row or an open four is a forced
+ * win, however many plies deep, and it is found by searching only a handful of moves per ply instead of the full
+ * width of the board. If the defender gets a four of their own on the way, the attacker has to block it, which only
+ * keeps the sequence going if the block is itself a four.
+ * <p>
+ * The solver plays on its own copy of the board matrix and never allocates while searching.
+ */
+public class VcfSolver {
+    // Returned by solve when no forced win was found
+    public static final int NO_MOVE = -1;
+
+    private static final int[][] DIRECTIONS = {{0, 1}, {1, 0}, {1, 1}, {1, -1}};
+    private static final int REACH = 4; // A four and its completion lie within 4 cells of each other
+
+    private final int boardSize;
+    private final int maxAttacks; // Deepest sequence, in attacker moves
+    private final int[][] matrix; // Working copy of the position
+    private final int[][] candidates; // Per attacker move: the cells that make a four
+    private final int[] rootThreats; // The defender's five-completing cells in the root position
+    private int rootThreatCount;
+
+    private int attacker;
+    private int defender;
+    private long nodeLimit;
+    private long nodeCount;
+
+    public VcfSolver(int boardSize, int maxAttacks) {
+        this.boardSize = boardSize;
+        this.maxAttacks = maxAttacks;
+        matrix = new int[boardSize][boardSize];
+        candidates = new int[maxAttacks][boardSize * boardSize];
+        rootThreats = new int[boardSize * boardSize];
+    }
+
+    // Returns the number of positions searched by the last call to solve
+    public long getNodeCount() {
+        return nodeCount;
+    }
+
+    /**
+     * Looks for a forced win by continuous fours.
+     *
+     * @param board       the position, with the attacker to move
+     * @param blackAttack whether black is the attacker
+     * @param nodeLimit   the most positions to search
+     * @return the first move of a winning sequence as row * boardSize + column, or NO_MOVE
+     */
+    public int solve(Board board, boolean blackAttack, long nodeLimit) {
+        int[][] source = board.getBoardMatrix();
+        for (int i = 0; i < boardSize; i++) {
+            System.arraycopy(source[i], 0, matrix[i], 0, boardSize);
+        }
+        attacker = blackAttack ? 2 : 1;
+        defender = 3 - attacker;
+        this.nodeLimit = nodeLimit;
+        nodeCount = 0;
+        rootThreatCount = 0;
+        for (int row = 0; row < boardSize; row++) {
+            for (int col = 0; col < boardSize; col++) {
+                if (matrix[row][col] == 0 && makesFive(row, col, defender)) {
+                    rootThreats[rootThreatCount++] = row * boardSize + col;
+                }
+            }
+        }
+        int[] rootCandidates = candidates[0];
+        int count = 0;
+        for (int row = 0; row < boardSize; row++) {
+            for (int col = 0; col < boardSize; col++) {
+                if (matrix[row][col] == 0 && hasOwnStoneNearby(row, col)
+                        && Threats.threatAt(matrix, row, col, attacker) >= Threats.FOUR) {
+                    rootCandidates[count++] = row * boardSize + col;
+                }
+            }
+        }
+        return attack(0, count, NO_MOVE);
+    }
+
+    // Tries the candidate fours of one attacker move; returns the winning candidate or NO_MOVE
+    private int attack(int depth, int count, int lastBlock) {
+        nodeCount++;
+        int[] cells = candidates[depth];
+        // An immediate five wins outright
+        for (int i = 0; i < count; i++) {
+            if (makesFive(cells[i] / boardSize, cells[i] % boardSize, attacker)) {
+                return cells[i];
+            }
+        }
+        // A five threat of the defender has to be blocked first
+        int forced = defenderThreat(lastBlock);
+        if (forced == -2) {
+            return NO_MOVE; // Two or more threats cannot both be blocked
+        }
+        if (forced != NO_MOVE) {
+            // The block is the only move; the sequence goes on only if it is also a four
+            cells[0] = forced;
+            count = 1;
+        }
+        for (int i = 0; i < count; i++) {
+            int cell = cells[i];
+            if (nodeCount >= nodeLimit) {
+                return NO_MOVE;
+            }
+            int row = cell / boardSize;
+            int col = cell % boardSize;
+            if (matrix[row][col] != 0) {
+                continue;
+            }
+            int threat = Threats.threatAt(matrix, row, col, attacker);
+            if (threat >= Threats.OPEN_FOUR) {
+                return cell; // The defender cannot block both ends
+            }
+            if (threat < Threats.FOUR || depth + 1 >= maxAttacks) {
+                continue;
+            }
+            matrix[row][col] = attacker;
+            int block = completion(row, col);
+            int blockRow = block / boardSize;
+            int blockCol = block % boardSize;
+            matrix[blockRow][blockCol] = defender;
+            boolean wins = attack(depth + 1, lineCandidates(row, col, candidates[depth + 1]), block) != NO_MOVE;
+            matrix[blockRow][blockCol] = 0;
+            matrix[row][col] = 0;
+            if (wins) {
+                return cell;
+            }
+        }
+        return NO_MOVE;
+    }
+
+    // Returns the one cell where the defender threatens five, NO_MOVE if there is none, or -2 if there are several
+    private int defenderThreat(int lastBlock) {
+        int found = NO_MOVE;
+        for (int i = 0; i < rootThreatCount; i++) {
+            int cell = rootThreats[i];
+            if (matrix[cell / boardSize][cell % boardSize] == 0 && cell != found) {
+                if (found != NO_MOVE) {
+                    return -2;
+                }
+                found = cell;
+            }
+        }
+        if (lastBlock == NO_MOVE) {
+            return found;
+        }
+        // A new threat can only come from the defender's latest stone
+        int row = lastBlock / boardSize;
+        int col = lastBlock % boardSize;
+        for (int[] dir : DIRECTIONS) {
+            for (int step = -REACH; step <= REACH; step++) {
+                int r = row + step * dir[0];
+                int c = col + step * dir[1];
+                if (step != 0 && r >= 0 && r < boardSize && c >= 0 && c < boardSize && matrix[r][c] == 0
+                        && r * boardSize + c != found && makesFive(r, c, defender)) {
+                    if (found != NO_MOVE) {
+                        return -2;
+                    }
+                    found = r * boardSize + c;
+                }
+            }
+        }
+        return found;
+    }
+
+    // Writes the cells on the lines through the last attacker stone that make a four; a continuation that does not
+    // use the last stone was already available one move earlier
+    private int lineCandidates(int row, int col, int[] out) {
+        int count = 0;
+        for (int[] dir : DIRECTIONS) {
+            for (int step = -REACH; step <= REACH; step++) {
+                int r = row + step * dir[0];
+                int c = col + step * dir[1];
+                if (step != 0 && r >= 0 && r < boardSize && c >= 0 && c < boardSize && matrix[r][c] == 0
+                        && Threats.threatAt(matrix, r, c, attacker) >= Threats.FOUR) {
+                    out[count++] = r * boardSize + c;
+                }
+            }
+        }
+        return count;
+    }
+
+    // Returns the cell that completes the four just made at (row, col)
+    private int completion(int row, int col) {
+        for (int[] dir : DIRECTIONS) {
+            for (int step = -REACH; step <= REACH; step++) {
+                int r = row + step * dir[0];
+                int c = col + step * dir[1];
+                if (step != 0 && r >= 0 && r < boardSize && c >= 0 && c < boardSize && matrix[r][c] == 0
+                        && makesFive(r, c, attacker)) {
+                    return r * boardSize + c;
+                }
+            }
+        }
+        throw new IllegalStateException("A four without a completion at " + row + ", " + col);
+    }
+
+    // Checks whether placing a stone of the color on the empty cell makes five in a row
+    private boolean makesFive(int row, int col, int color) {
+        for (int[] dir : DIRECTIONS) {
+            int run = 1;
+            for (int sign = -1; sign <= 1; sign += 2) {
+                int r = row + sign * dir[0];
+                int c = col + sign * dir[1];
+                while (r >= 0 && r < boardSize && c >= 0 && c < boardSize && matrix[r][c] == color) {
+                    run++;
+                    r += sign * dir[0];
+                    c += sign * dir[1];
+                }
+            }
+            if (run >= 5) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // A four always has an own stone within two cells of the move, so other cells need not be classified
+    private boolean hasOwnStoneNearby(int row, int col) {
+        for (int r = Math.max(0, row - 2); r <= Math.min(boardSize - 1, row + 2); r++) {
+            for (int c = Math.max(0, col - 2); c <= Math.min(boardSize - 1, col + 2); c++) {
+                if (matrix[r][c] == attacker) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,53 @@
+import java.util.SplittableRandom;
+
+/**
+ * Random 64-bit keys for Zobrist hashing of board positions.
+ * <p>
+ * The hash of a position is the XOR of the key of every stone on the board, so placing or removing a stone updates
+ * it with a single XOR. The keys come from a fixed seed, which makes hashes stable across runs.
+ */
+public final class Zobrist {
+    // Largest board side supported (the GUI labels columns with 25 letters)
+    public static final int MAX_BOARD_SIZE = 25;
+
+    private static final long SEED = 0x9E3779B97F4A7C15L;
+    private static final long[] WHITE_KEYS = new long[MAX_BOARD_SIZE * MAX_BOARD_SIZE];
+    private static final long[] BLACK_KEYS = new long[MAX_BOARD_SIZE * MAX_BOARD_SIZE];
+    // XORed into a hash when black is to move
+    private static final long BLACK_TO_MOVE;
+
+    static {
+        SplittableRandom random = new SplittableRandom(SEED);
+        for (int i = 0; i < WHITE_KEYS.length; i++) {
+            WHITE_KEYS[i] = random.nextLong();
+            BLACK_KEYS[i] = random.nextLong();
+        }
+        BLACK_TO_MOVE = random.nextLong();
+    }
+
+    private Zobrist() {
+    }
+
+    /**
+     * Returns the key of a stone.
+     *
+     * @param posX  the column of the stone
+     * @param posY  the row of the stone
+     * @param black whether the stone is black
+     * @return the key to XOR into the hash
+     */
+    public static long key(int posX, int posY, boolean black) {
+        int cell = posY * MAX_BOARD_SIZE + posX;
+        return black ? BLACK_KEYS[cell] : WHITE_KEYS[cell];
+    }
+
+    /**
+     * Returns the key to XOR into a position hash to tell apart the two sides to move.
+     *
+     * @param blacksTurn whether black is to move
+     * @return the side-to-move key
+     */
+    public static long sideToMove(boolean blacksTurn) {
+        return blacksTurn ? BLACK_TO_MOVE : 0L;
+    }
+}